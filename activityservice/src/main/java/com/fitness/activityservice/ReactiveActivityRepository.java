@@ -0,0 +1,10 @@
+package com.fitness.activityservice;
+
+import com.fitness.activityservice.model.Activity;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+//non-blocking twin of ActivityRepository, used by the reactive ingestion mode
+@Repository
+public interface ReactiveActivityRepository extends ReactiveMongoRepository<Activity, String> {
+}
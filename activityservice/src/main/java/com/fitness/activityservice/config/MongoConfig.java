@@ -2,9 +2,11 @@ package com.fitness.activityservice.config;
 
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.config.EnableReactiveMongoAuditing;
 
 @Configuration
 @EnableMongoAuditing
+@EnableReactiveMongoAuditing
 public class MongoConfig {
 }
-//created so that Activity model me @CreatedDate and @LastModifiedDate are automatically populated with values
\ No newline at end of file
+//created so that Activity model me @CreatedDate and @LastModifiedDate are automatically populated with values (for both the blocking and the reactive repositories)
\ No newline at end of file
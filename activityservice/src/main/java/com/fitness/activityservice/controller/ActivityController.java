@@ -1,31 +1,127 @@
 package com.fitness.activityservice.controller;
 
+import com.fitness.activityservice.dto.ActivityPage;
 import com.fitness.activityservice.dto.ActivityRequest;
 import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.ActivityStatsBucket;
+import com.fitness.activityservice.dto.BatchActivityResponse;
+import com.fitness.activityservice.model.RollupGranularity;
+import com.fitness.activityservice.service.ActivityRollupService;
 import com.fitness.activityservice.service.ActivityService;
+import com.fitness.activityservice.service.ActivityVersionService;
+import com.fitness.fieldselection.FieldSelection;
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @RestController     //Annotation to tell that it is a controller file
 @RequestMapping("/api/activities")
 @AllArgsConstructor
 public class ActivityController {
 
+    //what ?fields= accepts on the list reads, and what ?view=summary returns (the list screen only shows these)
+    private static final Set<String> FIELDS = Set.of("id", "userId", "type", "duration", "caloriesBurned", "startTime",
+            "additionalMetrics", "createdAt", "updatedAt");
+    private static final Set<String> SUMMARY_FIELDS = Set.of("type", "duration", "caloriesBurned", "startTime");
+
     private ActivityService activityService; //Created service file to write code of functions called below
+    private ActivityRollupService activityRollupService;
+    private ActivityVersionService activityVersionService;
 
     //Function to save activity in db ie when user clicks "ADD ACTIVITY" button this will run ie POST
     @PostMapping
-    public ResponseEntity<ActivityResponse> trackActivity(@RequestBody ActivityRequest request, @RequestHeader("X-User-ID") String userId) {
+    //returns a future so that in the async ingestion modes (activity.ingestion.mode) the servlet thread is not held
+    //clients that retry send the same Idempotency-Key header and get the first response back instead of a duplicate
+    public CompletableFuture<ResponseEntity<ActivityResponse>> trackActivity(@RequestBody ActivityRequest request, @RequestHeader("X-User-ID") String userId,
+                                                                             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         request.setUserId(userId);
-        return ResponseEntity.ok(activityService.trackActivity(request));
+        return activityService.ingestActivity(request, idempotencyKey).thenApply(ResponseEntity::ok);
+    }
+
+    //Bulk upload used by wearable sync jobs, one request for up to activity.batch.max-size activities
+    //returns the outcome of every entry in the same order as the request list
+    @PostMapping("/batch")
+    public ResponseEntity<BatchActivityResponse> trackActivities(@RequestBody List<ActivityRequest> requests, @RequestHeader("X-User-ID") String userId) {
+        return ResponseEntity.ok(activityService.trackActivities(userId, requests));
     }
 
     //Then after adding all activities visible in UI at downside so to get all activities did GetMapping
     @GetMapping
-    public ResponseEntity<List<ActivityResponse>> getUserActivities(@RequestHeader("X-User-ID") String userId) {
-        return ResponseEntity.ok(activityService.getUserActivities(userId));
+    //?fields=type,duration or ?view=summary to only get those fields
+    //The frontend polls this, so it gets an ETag and an unchanged list is answered with 304 from the version counter alone
+    public ResponseEntity<List<ActivityResponse>> getUserActivities(@RequestHeader("X-User-ID") String userId,
+                                                                    @RequestParam(required = false) String fields,
+                                                                    @RequestParam(required = false) String view,
+                                                                    WebRequest webRequest) {
+        FieldSelection selection = FieldSelection.parse(fields, view, FIELDS, SUMMARY_FIELDS).applyToResponse(webRequest);
+        if (webRequest.checkNotModified(activityVersionService.etag(userId, selection))) {
+            return perUser(HttpStatus.NOT_MODIFIED).build();
+        }
+        return perUser(HttpStatus.OK).body(activityService.getUserActivities(userId, selection));
+    }
+
+    //the list depends on who asks: shared caches must not hand it to another user, browsers revalidate with the ETag
+    private static ResponseEntity.BodyBuilder perUser(HttpStatus status) {
+        return ResponseEntity.status(status)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .varyBy("X-User-ID", "Authorization");
+    }
+
+    //Paged history for users with a lot of activities: newest first, ?cursor= from the previous page for the next one,
+    //optional from/to (ISO date-time) to limit it to a time range
+    @GetMapping("/page")
+    public ResponseEntity<ActivityPage> getUserActivitiesPage(@RequestHeader("X-User-ID") String userId,
+                                                              @RequestParam(required = false) String cursor,
+                                                              @RequestParam(defaultValue = "50") int limit,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                              @RequestParam(required = false) String fields,
+                                                              @RequestParam(required = false) String view,
+                                                              WebRequest webRequest) {
+        FieldSelection selection = FieldSelection.parse(fields, view, FIELDS, SUMMARY_FIELDS).applyToResponse(webRequest);
+        return ResponseEntity.ok(activityService.getUserActivitiesPage(userId, cursor, limit, from, to, selection));
+    }
+
+    //Whole history as NDJSON, written while it is read from Mongo (for exports, nothing is buffered in memory)
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamUserActivities(@RequestHeader("X-User-ID") String userId,
+                                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                      @RequestParam(required = false) String fields,
+                                                                      @RequestParam(required = false) String view) {
+        FieldSelection selection = FieldSelection.parse(fields, view, FIELDS, SUMMARY_FIELDS);
+        StreamingResponseBody body = out -> activityService.streamUserActivities(userId, from, to, selection, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    //Totals per day/week/month for the dashboard charts, ?granularity=day|week|month and optional from/to (ISO date, inclusive).
+    //Served from the pre-aggregated rollups so the cost does not grow with the number of activities
+    @GetMapping("/stats")
+    public ResponseEntity<List<ActivityStatsBucket>> getStats(@RequestHeader("X-User-ID") String userId,
+                                                              @RequestParam(defaultValue = "week") String granularity,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        RollupGranularity rollupGranularity;
+        try {
+            rollupGranularity = RollupGranularity.valueOf(granularity.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown granularity: " + granularity);
+        }
+        return ResponseEntity.ok(activityRollupService.getStats(userId, rollupGranularity, from, to));
     }
 }
@@ -0,0 +1,31 @@
+package com.fitness.activityservice.controller;
+
+import com.fitness.activityservice.service.ActivityRollupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+//Backfill/repair of the stats rollups, on the actuator instead of /api so it is not reachable through the gateway.
+//POST /actuator/rollups rebuilds every user (after enabling rollups on existing data),
+//POST /actuator/rollups/{userId} one user (after activity.rollup.failures went up)
+@Component
+@Endpoint(id = "rollups")
+@RequiredArgsConstructor
+public class RollupEndpoint {
+
+    private final ActivityRollupService activityRollupService;
+
+    @WriteOperation
+    public Map<String, Integer> rebuildAll() {
+        return Map.of("users", activityRollupService.rebuildAll());
+    }
+
+    @WriteOperation
+    public Map<String, Integer> rebuild(@Selector String userId) {
+        return Map.of("buckets", activityRollupService.rebuild(userId));
+    }
+}
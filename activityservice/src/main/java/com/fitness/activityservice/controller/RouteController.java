@@ -0,0 +1,46 @@
+package com.fitness.activityservice.controller;
+
+import com.fitness.activityservice.dto.NearbyActivity;
+import com.fitness.activityservice.dto.RouteRequest;
+import com.fitness.activityservice.dto.RouteResponse;
+import com.fitness.activityservice.service.RouteService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+//GPS routes of running, walking and cycling activities
+@RestController
+@RequestMapping("/api/activities")
+@AllArgsConstructor
+public class RouteController {
+
+    private RouteService routeService;
+
+    //body is {"polyline": "..."} (Google encoded polyline) or {"points": [[lat, lng], ...]}
+    @PostMapping("/{activityId}/route")
+    public ResponseEntity<RouteResponse> saveRoute(@PathVariable String activityId,
+                                                   @RequestBody RouteRequest request,
+                                                   @RequestHeader("X-User-ID") String userId) {
+        return ResponseEntity.ok(routeService.saveRoute(userId, activityId, request));
+    }
+
+    //?maxPoints= picks the most detailed precomputed version that fits, e.g. a few hundred for a thumbnail map
+    @GetMapping("/{activityId}/route")
+    public ResponseEntity<RouteResponse> getRoute(@PathVariable String activityId,
+                                                  @RequestHeader("X-User-ID") String userId,
+                                                  @RequestParam(required = false) Integer maxPoints) {
+        return ResponseEntity.ok(routeService.getRoute(userId, activityId, maxPoints));
+    }
+
+    //"activities near me": the user's routes starting within radius meters of lat/lng
+    @GetMapping("/nearby")
+    public ResponseEntity<List<NearbyActivity>> findNearby(@RequestHeader("X-User-ID") String userId,
+                                                           @RequestParam double lat,
+                                                           @RequestParam double lng,
+                                                           @RequestParam(defaultValue = "5000") double radius,
+                                                           @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(routeService.findNearby(userId, lat, lng, radius, limit));
+    }
+}
@@ -0,0 +1,40 @@
+package com.fitness.activityservice.controller;
+
+import com.fitness.activityservice.dto.SensorSamplesRequest;
+import com.fitness.activityservice.dto.SensorSamplesResponse;
+import com.fitness.activityservice.model.SensorChannel;
+import com.fitness.activityservice.service.SensorSampleService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+//Heart rate, cadence, power and pace streams recorded during an activity
+@RestController
+@RequestMapping("/api/activities/{activityId}/samples")
+@AllArgsConstructor
+public class SensorSampleController {
+
+    private SensorSampleService sensorSampleService;
+
+    //Upload (or append to) the streams of one of the user's activities, returns the number of samples stored per channel
+    @PostMapping
+    public ResponseEntity<Map<SensorChannel, Integer>> uploadSamples(@PathVariable String activityId,
+                                                                     @RequestBody SensorSamplesRequest request,
+                                                                     @RequestHeader("X-User-ID") String userId) {
+        return ResponseEntity.ok(sensorSampleService.uploadSamples(userId, activityId, request));
+    }
+
+    //?channels=HEART_RATE&channels=PACE to pick channels (default all), resolution=<seconds> to average samples
+    //into buckets, maxPoints=<n> to let the server pick the resolution for a chart n points wide
+    @GetMapping
+    public ResponseEntity<SensorSamplesResponse> getSamples(@PathVariable String activityId,
+                                                            @RequestHeader("X-User-ID") String userId,
+                                                            @RequestParam(required = false) List<SensorChannel> channels,
+                                                            @RequestParam(defaultValue = "0") int resolution,
+                                                            @RequestParam(required = false) Integer maxPoints) {
+        return ResponseEntity.ok(sensorSampleService.getSamples(userId, activityId, channels, resolution, maxPoints));
+    }
+}
@@ -0,0 +1,17 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//One page of a user's activity history, newest first.
+//nextCursor is opaque, pass it back as ?cursor= to get the following page, null when there is nothing more
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityPage {
+    private List<ActivityResponse> items;
+    private String nextCursor;
+}
@@ -1,6 +1,8 @@
 package com.fitness.activityservice.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 import com.fitness.activityservice.model.ActivityType;
+import com.fitness.fieldselection.FieldSelection;
 import lombok.Data;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
@@ -10,8 +12,10 @@ import java.time.LocalDateTime;
 import java.util.Map;
 
 // Creating ActivityResponse DTO to send safe data back to client
+// ?fields=/?view=summary responses only carry what was asked for (FieldSelection), full ones every field
 
 @Data
+@JsonFilter(FieldSelection.FILTER)
 public class ActivityResponse {
     private String id;
     private String userId; 
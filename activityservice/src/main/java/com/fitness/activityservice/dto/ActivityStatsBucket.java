@@ -0,0 +1,16 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.ActivityType;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+
+//One day/week/month of GET /api/activities/stats: totals over all types plus the split per ActivityType
+@Data
+public class ActivityStatsBucket {
+    private LocalDate bucketStart;
+    private ActivityTotals total = new ActivityTotals();
+    private Map<ActivityType, ActivityTotals> byType = new EnumMap<>(ActivityType.class);
+}
@@ -0,0 +1,16 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchActivityResponse {
+    private int created;
+    private int failed;
+    private List<BatchItemResult> results;
+}
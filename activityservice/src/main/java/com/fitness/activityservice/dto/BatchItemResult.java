@@ -0,0 +1,22 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Outcome of one entry of POST /api/activities/batch, index is the position in the request list
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchItemResult {
+    public enum Status {
+        CREATED,    //saved and published
+        REJECTED,   //invalid entry, nothing was written
+        FAILED      //valid but the database refused the write
+    }
+
+    private int index;
+    private String id;
+    private Status status;
+    private String error;
+}
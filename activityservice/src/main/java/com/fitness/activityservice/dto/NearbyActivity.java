@@ -0,0 +1,19 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.ActivityType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Entry of GET /api/activities/nearby, closest start first
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearbyActivity {
+    private String activityId;
+    private ActivityType type;
+    private double startLat;
+    private double startLng;
+    private double distanceFromYouMeters;
+    private double routeDistanceMeters;
+}
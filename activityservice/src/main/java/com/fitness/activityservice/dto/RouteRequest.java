@@ -0,0 +1,12 @@
+package com.fitness.activityservice.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+//Body of POST /api/activities/{activityId}/route: either an encoded polyline or [lat, lng] points
+@Data
+public class RouteRequest {
+    private String polyline;
+    private List<double[]> points;
+}
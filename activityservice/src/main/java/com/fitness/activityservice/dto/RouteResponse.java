@@ -0,0 +1,19 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.ActivityType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//toleranceMeters is 0 when polyline is the full resolution route
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RouteResponse {
+    private String activityId;
+    private ActivityType type;
+    private double distanceMeters;
+    private double toleranceMeters;
+    private int pointCount;
+    private String polyline;
+}
@@ -0,0 +1,16 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//Samples of one channel in columns: offsets[i] (ms since the activity start) belongs to values[i]
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SampleSeries {
+    private List<Long> offsets;
+    private List<Double> values;
+}
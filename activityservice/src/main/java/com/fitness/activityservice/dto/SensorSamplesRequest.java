@@ -0,0 +1,13 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.SensorChannel;
+import lombok.Data;
+
+import java.util.Map;
+
+//Body of POST /api/activities/{activityId}/samples, e.g. {"channels": {"HEART_RATE": {"offsets": [0, 1000], "values": [98, 101]}}}.
+//Long recordings can be uploaded in several requests as long as each one continues after the previous one
+@Data
+public class SensorSamplesRequest {
+    private Map<SensorChannel, SampleSeries> channels;
+}
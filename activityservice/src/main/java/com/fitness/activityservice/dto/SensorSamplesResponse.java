@@ -0,0 +1,18 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.SensorChannel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+//resolutionMs is the bucket width the samples were averaged over, 0 when they are the raw samples
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SensorSamplesResponse {
+    private String activityId;
+    private Map<SensorChannel, Long> resolutionMs;
+    private Map<SensorChannel, SampleSeries> channels;
+}
@@ -0,0 +1,10 @@
+package com.fitness.activityservice.dto;
+
+import lombok.Data;
+
+//Event userservice publishes on user-events when a new user registers
+@Data
+public class UserCreatedEvent {
+    private String id;
+    private String keycloakId;
+}
@@ -6,12 +6,18 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
 import java.util.Map;
 
+//serves findByUserId and the (startTime, id) newest first history pages without a collection scan or in memory sort
+@CompoundIndex(name = "userId_startTime_id", def = "{'userId': 1, 'startTime': -1, '_id': -1}")
+//OutboxRelay's claim query, only activities whose event is not published yet are in it
+@CompoundIndex(name = "outbox_status_createdAt", def = "{'outbox.status': 1, 'createdAt': 1}",
+        partialFilter = "{'outbox': {$exists: true}}")
 @Document(collection = "activities") //This class should be stored as a MongoDB collection named activities, mongoDB has not tables it has collections
 @Data
 @Builder
@@ -33,5 +39,8 @@ public class Activity {
 
     @LastModifiedDate
     private LocalDateTime updatedAt;
+
+    //the activity's Kafka event while it is not published, saved in the same document write as the activity
+    private OutboxEvent outbox;
 }
 
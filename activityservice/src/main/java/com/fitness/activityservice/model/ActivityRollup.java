@@ -0,0 +1,32 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+
+//Running totals of one user's activities of one type in one day/week/month bucket.
+//Updated with $inc on every tracked activity so stats never have to scan the activities collection
+@Document(collection = "activity_rollups")
+@CompoundIndex(name = "userId_granularity_bucketStart", def = "{'userId': 1, 'granularity': 1, 'bucketStart': 1}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityRollup {
+    //userId|granularity|bucketStart|type, so each update is a single upsert by _id
+    @Id
+    private String id;
+    private String userId;
+    private RollupGranularity granularity;
+    private LocalDate bucketStart;
+    private ActivityType type;
+    private long count;
+    private long totalDuration;
+    private long totalCalories;
+}
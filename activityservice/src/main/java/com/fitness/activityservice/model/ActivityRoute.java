@@ -0,0 +1,33 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+//GPS route of a RUNNING/WALKING/CYCLING activity, kept out of the activities collection so history reads never load it.
+//polyline is the full resolution track (Google encoded polyline, 1e-5 degrees), levels the simplified versions
+//computed on upload, coarsest last. Readers project the one representation they need
+@Document(collection = "activity_routes")
+@CompoundIndex(name = "userId_start", def = "{'userId': 1, 'start': '2dsphere'}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityRoute {
+    @Id
+    private String activityId;
+    private String userId;
+    private ActivityType type;
+    private GeoJsonPoint start;
+    private double distanceMeters;
+    private int pointCount;
+    private String polyline;
+    private List<RouteLevel> levels;
+}
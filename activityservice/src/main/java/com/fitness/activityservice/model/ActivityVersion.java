@@ -0,0 +1,18 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+//Per user counter bumped after every write to the user's activities, the ETag of GET /api/activities is derived from it
+@Document(collection = "activity_versions")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityVersion {
+    @Id
+    private String userId;
+    private long version;
+}
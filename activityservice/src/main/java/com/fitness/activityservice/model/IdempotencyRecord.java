@@ -0,0 +1,39 @@
+package com.fitness.activityservice.model;
+
+import com.fitness.activityservice.dto.ActivityResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+//Outcome of a POST /api/activities sent with an Idempotency-Key, so a retry gets the original response back.
+//id is userId:key (keys are only unique per client), requestHash catches a key reused for a different body.
+//Records expire a day after the first attempt, clients do not retry for longer than that
+@Document(collection = "activity_idempotency_keys")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyRecord {
+    public enum Status {
+        IN_PROGRESS,    //reserved by the first request, which has not finished yet
+        COMPLETED
+    }
+
+    @Id
+    private String id;
+    private String requestHash;
+    private Status status;
+    private ActivityResponse response;
+    //id the activity is written under, fixed at reservation so a retry that takes over a stale reservation
+    //finds the activity of the earlier attempt instead of writing another one
+    private String activityId;
+
+    @Indexed(expireAfter = "24h")
+    private Instant createdAt;
+}
@@ -0,0 +1,30 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//Kafka event of an activity that is not published yet (transactional outbox).
+//Embedded in the activity document itself ("outbox" field), so the activity and its event are one single document
+//write, atomic without a Mongo transaction or replica set. OutboxRelay publishes it and removes the field
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxEvent {
+    private OutboxStatus status;
+    private int attempts;
+
+    //set when a relay run claims the event so two relays never publish the same batch
+    private String claimToken;
+    private Instant claimedAt;
+
+    public static OutboxEvent pending() {
+        return OutboxEvent.builder()
+                .status(OutboxStatus.PENDING)
+                .build();
+    }
+}
@@ -0,0 +1,6 @@
+package com.fitness.activityservice.model;
+
+public enum OutboxStatus {
+    PENDING,    //waiting for the relay
+    SENDING     //claimed by a relay run, see OutboxEvent.claimedAt. Once Kafka acknowledged it the event is removed
+}
@@ -0,0 +1,19 @@
+package com.fitness.activityservice.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+public enum RollupGranularity {
+    DAY,
+    WEEK,   //ISO weeks, starting Monday
+    MONTH;
+
+    //first day of the bucket the given date falls into
+    public LocalDate bucketStart(LocalDate date) {
+        return switch (this) {
+            case DAY -> date;
+            case WEEK -> date.with(DayOfWeek.MONDAY);
+            case MONTH -> date.withDayOfMonth(1);
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Route simplified so no dropped point is further than toleranceMeters from the kept line
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RouteLevel {
+    private double toleranceMeters;
+    private int pointCount;
+    private String polyline;
+}
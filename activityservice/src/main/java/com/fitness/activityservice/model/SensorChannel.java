@@ -0,0 +1,24 @@
+package com.fitness.activityservice.model;
+
+//Sensor time series an activity can carry. Values are stored as integers of value * scale,
+//so pace keeps two decimals while heart rate, cadence and power stay whole numbers
+public enum SensorChannel {
+    HEART_RATE(1),  //bpm
+    CADENCE(1),     //rpm or steps per minute
+    POWER(1),       //watts
+    PACE(100);      //seconds per km
+
+    private final int scale;
+
+    SensorChannel(int scale) {
+        this.scale = scale;
+    }
+
+    public long toStored(double value) {
+        return Math.round(value * scale);
+    }
+
+    public double fromStored(double stored) {
+        return stored / scale;
+    }
+}
@@ -0,0 +1,36 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+//Up to activity.samples.block-size consecutive samples of one channel of one activity.
+//offsets (ms since the activity start) and values are delta/varint encoded by SampleBlockCodec and stored as BSON binary,
+//so a 1 Hz heart rate stream costs about 2 bytes per sample instead of a document per sample in Activity.metrics.
+//id is activityId|channel|firstOffset, so writing the same block twice fails on _id instead of storing it again
+@Document(collection = "activity_sensor_samples")
+@CompoundIndex(name = "activityId_channel_firstOffset", def = "{'activityId': 1, 'channel': 1, 'firstOffset': 1}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SensorSampleBlock {
+    @Id
+    private String id;
+    private String activityId;
+    private String userId;
+    private SensorChannel channel;
+    private long firstOffset;
+    private long lastOffset;
+    private int count;
+    private byte[] offsets;
+    private byte[] values;
+
+    public static String idOf(String activityId, SensorChannel channel, long firstOffset) {
+        return activityId + "|" + channel + "|" + firstOffset;
+    }
+}
@@ -0,0 +1,27 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+//Highest sample offset stored for one channel of an activity. An upload moves it forward with a conditional update
+//(only if its first offset is past it) before writing its blocks, so concurrent uploads can never append overlapping samples
+@Document(collection = "activity_sample_heads")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SensorSampleHead {
+    //activityId|channel
+    @Id
+    private String id;
+    //-1 while the channel has no samples
+    private long lastOffset;
+
+    public static String idOf(String activityId, SensorChannel channel) {
+        return activityId + "|" + channel;
+    }
+}
@@ -0,0 +1,57 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Writes many activities with one unordered insertMany instead of one save() per activity.
+//Unordered means one bad document does not stop the rest, the failures are reported per position
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ActivityBulkWriter {
+
+    private final MongoTemplate mongoTemplate;
+
+    //Inserts all activities and fills in their id (unless already assigned)/createdAt/updatedAt.
+    //Returns position in the list → error message for the ones that were not written (empty when all succeeded)
+    public Map<Integer, String> insertAll(List<Activity> activities) {
+        if (activities.isEmpty()) {
+            return Map.of();
+        }
+        //bulk inserts don't hand generated ids back, so assign them up front.
+        //With an id already set auditing treats the entity as existing and skips @CreatedDate, so set it here too
+        LocalDateTime now = LocalDateTime.now();
+        for (Activity activity : activities) {
+            if (activity.getId() == null) {
+                activity.setId(new ObjectId().toHexString());
+            }
+            activity.setCreatedAt(now);
+            activity.setUpdatedAt(now);
+        }
+
+        Map<Integer, String> failures = new HashMap<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class)
+                    .insert(activities)
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failures.put(error.getIndex(), error.getMessage());
+            }
+            log.warn("{} of {} activities failed to insert", failures.size(), activities.size());
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,167 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+//Group commit for activity.ingestion.mode=GROUP_COMMIT.
+//Concurrent requests put their activity in a queue, one flusher thread collects up to max-batch-size of them
+//(waiting at most linger after the first) and writes the whole batch, events embedded, with one insertMany
+//(which the relay publishes as one producer batch), one rollup bulk write and one version bulk write.
+//Every caller's future completes when its batch is written, so latency grows by up to linger while the
+//number of Mongo round trips per activity drops with the batch size
+@Component
+@ConditionalOnProperty(name = "activity.ingestion.mode", havingValue = "GROUP_COMMIT")
+@Slf4j
+public class ActivityGroupCommitter {
+
+    private final ActivityBulkWriter activityBulkWriter;
+    private final ActivityRollupService activityRollupService;
+    private final ActivityVersionService activityVersionService;
+    private final DistributionSummary batchSizes;
+
+    private final int maxBatchSize;
+    private final Duration linger;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public ActivityGroupCommitter(ActivityBulkWriter activityBulkWriter,
+                                  ActivityRollupService activityRollupService,
+                                  ActivityVersionService activityVersionService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${activity.group-commit.max-batch-size:256}") int maxBatchSize,
+                                  @Value("${activity.group-commit.linger:5ms}") Duration linger,
+                                  @Value("${activity.group-commit.queue-capacity:10000}") int queueCapacity) {
+        this.activityBulkWriter = activityBulkWriter;
+        this.activityRollupService = activityRollupService;
+        this.activityVersionService = activityVersionService;
+        this.batchSizes = DistributionSummary.builder("activity.group-commit.batch-size")
+                .description("Activities written per group commit flush")
+                .register(meterRegistry);
+        this.maxBatchSize = maxBatchSize;
+        this.linger = linger;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flusher = Thread.ofPlatform().name("activity-group-commit").daemon().start(this::run);
+    }
+
+    //completes with the saved activity (id and timestamps set) once its batch is in Mongo
+    public CompletableFuture<Activity> submit(Activity activity) {
+        PendingWrite write = new PendingWrite(activity, new CompletableFuture<>());
+        if (!running || !queue.offer(write)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many activities waiting to be saved");
+        }
+        return write.result();
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + linger.toNanos();
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        //linger is over, still take whatever is already waiting
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                //only reached when insertAll itself threw, callers completed by flush are not affected
+                log.error("Group commit flush failed", e);
+                batch.forEach(write -> write.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+        //left over only when interrupted, nothing will write these anymore
+        queue.forEach(write -> write.result().completeExceptionally(
+                new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Shutting down")));
+        queue.clear();
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        batchSizes.record(batch.size());
+        List<Activity> activities = batch.stream().map(PendingWrite::activity).toList();
+        Map<Integer, String> failures = activityBulkWriter.insertAll(activities);
+
+        List<Activity> saved = new ArrayList<>(activities.size());
+        Set<String> userIds = new LinkedHashSet<>();
+        for (int i = 0; i < activities.size(); i++) {
+            if (!failures.containsKey(i)) {
+                saved.add(activities.get(i));
+                userIds.add(activities.get(i).getUserId());
+            }
+        }
+        //the activities (events embedded) are stored at this point, so the callers get their result whatever happens below.
+        //record counts its own failures in activity.rollup.failures, a failed version bump is retried once
+        activityRollupService.record(saved);
+        bumpVersions(userIds);
+
+        for (int i = 0; i < batch.size(); i++) {
+            String error = failures.get(i);
+            if (error == null) {
+                batch.get(i).result().complete(activities.get(i));
+            } else {
+                batch.get(i).result().completeExceptionally(new RuntimeException("Failed to save activity: " + error));
+            }
+        }
+    }
+
+    //a version that is not bumped would let the users' clients keep their cached list (304) without the new activities
+    private void bumpVersions(Set<String> userIds) {
+        try {
+            activityVersionService.bumpAll(userIds);
+        } catch (RuntimeException e) {
+            log.warn("Version bump after group commit failed, retrying", e);
+            try {
+                activityVersionService.bumpAll(userIds);
+            } catch (RuntimeException retryError) {
+                log.error("Failed to bump the activity list versions of users {}", userIds, retryError);
+            }
+        }
+    }
+
+    //stops taking new writes, the flusher finishes what is already queued
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.join(Duration.ofSeconds(10));
+        if (flusher.isAlive()) {
+            flusher.interrupt();
+        }
+    }
+
+    private record PendingWrite(Activity activity, CompletableFuture<Activity> result) {
+    }
+}
@@ -0,0 +1,218 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.ActivityStatsBucket;
+import com.fitness.activityservice.dto.ActivityTotals;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityRollup;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.RollupGranularity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+//Keeps the per user daily/weekly/monthly totals in activity_rollups up to date and serves the stats endpoint from them.
+//Every activity adds to one bucket per granularity, so a stats request reads one document per (bucket, type).
+//A failed update does not fail the request (the activity is stored), it is counted in activity.rollup.failures
+//and the user's totals are repaired with rebuild (POST /actuator/rollups/{userId})
+@Service
+@Slf4j
+public class ActivityRollupService {
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final Counter failures;
+
+    public ActivityRollupService(MongoTemplate mongoTemplate,
+                                 ReactiveMongoTemplate reactiveMongoTemplate,
+                                 MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.failures = Counter.builder("activity.rollup.failures")
+                .description("Activities missing from their rollups because the update failed")
+                .register(meterRegistry);
+    }
+
+    //adds the activities to their buckets, all upserts go to Mongo in one unordered bulk write
+    public void record(List<Activity> activities) {
+        if (activities.isEmpty()) {
+            return;
+        }
+        //combine activities falling into the same bucket first (matters for batch uploads)
+        Map<String, ActivityRollup> deltas = new LinkedHashMap<>();
+        activities.forEach(activity -> add(deltas, activity));
+
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityRollup.class);
+            deltas.values().forEach(delta -> bulk.upsert(byId(delta), increment(delta)));
+            bulk.execute();
+        } catch (Exception e) {
+            //the activity itself is already stored, a failed rollup must not fail the request
+            failures.increment(activities.size());
+            log.error("Failed to update rollups for {} activities of users {}, rebuild them with POST /actuator/rollups/<userId>",
+                    activities.size(), activities.stream().map(Activity::getUserId).distinct().toList(), e);
+        }
+    }
+
+    public Mono<Void> recordReactive(Activity activity) {
+        return Flux.fromIterable(deltasFor(activity))
+                .flatMap(delta -> reactiveMongoTemplate.upsert(byId(delta), increment(delta), ActivityRollup.class))
+                .doOnError(e -> {
+                    failures.increment();
+                    log.error("Failed to update rollups for activity {} of user {}", activity.getId(), activity.getUserId(), e);
+                })
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    //Buckets of the user between from and to (both inclusive, either may be null), oldest first
+    public List<ActivityStatsBucket> getStats(String userId, RollupGranularity granularity, LocalDate from, LocalDate to) {
+        Criteria criteria = Criteria.where("userId").is(userId).and("granularity").is(granularity);
+        if (from != null || to != null) {
+            Criteria range = criteria.and("bucketStart");
+            if (from != null) {
+                range.gte(granularity.bucketStart(from));
+            }
+            if (to != null) {
+                range.lte(to);
+            }
+        }
+        List<ActivityRollup> rollups = mongoTemplate.find(new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "bucketStart")), ActivityRollup.class);
+
+        Map<LocalDate, ActivityStatsBucket> buckets = new LinkedHashMap<>();
+        for (ActivityRollup rollup : rollups) {
+            ActivityStatsBucket bucket = buckets.computeIfAbsent(rollup.getBucketStart(), start -> {
+                ActivityStatsBucket created = new ActivityStatsBucket();
+                created.setBucketStart(start);
+                return created;
+            });
+            bucket.getTotal().add(rollup.getCount(), rollup.getTotalDuration(), rollup.getTotalCalories());
+            //rollups written before the type was required may have none
+            ActivityType type = rollup.getType() == null ? ActivityType.OTHER : rollup.getType();
+            bucket.getByType().computeIfAbsent(type, key -> new ActivityTotals())
+                    .add(rollup.getCount(), rollup.getTotalDuration(), rollup.getTotalCalories());
+        }
+        return new ArrayList<>(buckets.values());
+    }
+
+    //Recomputes the user's rollups from the activities collection: for activities saved before rollups existed and to
+    //repair totals after failed updates. Buckets are overwritten in place (readers never see them empty), buckets
+    //without activities are removed. An activity the user saves while this runs may be counted twice or not at all,
+    //running it again fixes that. Returns the number of buckets written
+    public int rebuild(String userId) {
+        Query query = new Query(Criteria.where("userId").is(userId)).cursorBatchSize(1000);
+        query.fields().include("userId", "type", "duration", "caloriesBurned", "startTime", "createdAt");
+        Map<String, ActivityRollup> totals = new LinkedHashMap<>();
+        try (Stream<Activity> activities = mongoTemplate.stream(query, Activity.class)) {
+            activities.forEach(activity -> add(totals, activity));
+        }
+
+        if (!totals.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityRollup.class);
+            totals.values().forEach(total -> bulk.upsert(byId(total), overwrite(total)));
+            bulk.execute();
+        }
+        mongoTemplate.remove(new Query(Criteria.where("userId").is(userId).and("id").nin(totals.keySet())),
+                ActivityRollup.class);
+        return totals.size();
+    }
+
+    //rebuild for every user that has activities, one user at a time. Returns the number of users
+    public int rebuildAll() {
+        Aggregation users = Aggregation.newAggregation(Aggregation.group("userId"))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        int rebuilt = 0;
+        try (Stream<Document> userIds = mongoTemplate.aggregateStream(users, "activities", Document.class)) {
+            for (Document user : (Iterable<Document>) userIds::iterator) {
+                String userId = user.getString("_id");
+                if (userId != null) {
+                    rebuild(userId);
+                    rebuilt++;
+                }
+            }
+        }
+        log.info("Rebuilt the rollups of {} users", rebuilt);
+        return rebuilt;
+    }
+
+    private void add(Map<String, ActivityRollup> totals, Activity activity) {
+        for (ActivityRollup delta : deltasFor(activity)) {
+            totals.merge(delta.getId(), delta, (existing, added) -> {
+                existing.setCount(existing.getCount() + added.getCount());
+                existing.setTotalDuration(existing.getTotalDuration() + added.getTotalDuration());
+                existing.setTotalCalories(existing.getTotalCalories() + added.getTotalCalories());
+                return existing;
+            });
+        }
+    }
+
+    private List<ActivityRollup> deltasFor(Activity activity) {
+        LocalDateTime when = activity.getStartTime() != null ? activity.getStartTime()
+                : activity.getCreatedAt() != null ? activity.getCreatedAt()
+                : LocalDateTime.now();
+        //ingestion rejects activities without a type, only older documents can lack one
+        ActivityType type = activity.getType() == null ? ActivityType.OTHER : activity.getType();
+        List<ActivityRollup> deltas = new ArrayList<>();
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            LocalDate bucketStart = granularity.bucketStart(when.toLocalDate());
+            deltas.add(ActivityRollup.builder()
+                    .id(activity.getUserId() + "|" + granularity + "|" + bucketStart + "|" + type)
+                    .userId(activity.getUserId())
+                    .granularity(granularity)
+                    .bucketStart(bucketStart)
+                    .type(type)
+                    .count(1)
+                    .totalDuration(activity.getDuration() == null ? 0 : activity.getDuration())
+                    .totalCalories(activity.getCaloriesBurned() == null ? 0 : activity.getCaloriesBurned())
+                    .build());
+        }
+        return deltas;
+    }
+
+    private static Query byId(ActivityRollup delta) {
+        return new Query(Criteria.where("id").is(delta.getId()));
+    }
+
+    private static Update increment(ActivityRollup delta) {
+        return new Update()
+                .setOnInsert("userId", delta.getUserId())
+                .setOnInsert("granularity", delta.getGranularity())
+                .setOnInsert("bucketStart", delta.getBucketStart())
+                .setOnInsert("type", delta.getType())
+                .inc("count", delta.getCount())
+                .inc("totalDuration", delta.getTotalDuration())
+                .inc("totalCalories", delta.getTotalCalories());
+    }
+
+    private static Update overwrite(ActivityRollup total) {
+        return new Update()
+                .set("userId", total.getUserId())
+                .set("granularity", total.getGranularity())
+                .set("bucketStart", total.getBucketStart())
+                .set("type", total.getType())
+                .set("count", total.getCount())
+                .set("totalDuration", total.getTotalDuration())
+                .set("totalCalories", total.getTotalCalories());
+    }
+}
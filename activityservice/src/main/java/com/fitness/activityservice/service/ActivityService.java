@@ -1,30 +1,166 @@
 package com.fitness.activityservice.service;
 
 import com.fitness.activityservice.ActivityRepository;
+import com.fitness.activityservice.ReactiveActivityRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fitness.activityservice.dto.ActivityPage;
 import com.fitness.activityservice.dto.ActivityRequest;
 import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.BatchActivityResponse;
+import com.fitness.activityservice.dto.BatchItemResult;
 import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.OutboxEvent;
+import com.fitness.fieldselection.FieldSelection;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
- 
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service      
 @RequiredArgsConstructor
+@Slf4j
 public class ActivityService { 
 
     private final ActivityRepository activityRepository;
+    private final ReactiveActivityRepository reactiveActivityRepository;
     private final UserValidationService userValidationService;
-    private final KafkaTemplate<String, Activity> kafkaTemplate;
+    private final ActivityBulkWriter activityBulkWriter;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final ActivityRollupService activityRollupService;
+    private final ActivityVersionService activityVersionService;
+    private final IdempotencyService idempotencyService;
+    //only present with activity.ingestion.mode=GROUP_COMMIT
+    private final ObjectProvider<ActivityGroupCommitter> groupCommitter;
+
+    //used when activity.ingestion.mode=VIRTUAL_THREADS or GROUP_COMMIT
+    private final ExecutorService virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${activity.ingestion.mode:BLOCKING}")
+    private IngestionMode ingestionMode;
+
+    @Value("${activity.batch.max-size:5000}")
+    private int maxBatchSize;
+
+    @Value("${activity.history.max-page-size:500}")
+    private int maxPageSize;
+
+    //Entry point of POST /api/activities, runs trackActivity in the configured IngestionMode.
+    //The controller hands the future to Spring MVC so in the async modes the servlet thread is freed right away
+    public CompletableFuture<ActivityResponse> ingestActivity(ActivityRequest request) {
+        return ingestActivity(request, null, new AtomicBoolean());
+    }
+
+    //activityId is the id to write the activity under (null lets Mongo assign one).
+    //written is set right before the activity is handed to Mongo. A failure while it is still false stored nothing,
+    //after that the activity may be saved even though the request failed (e.g. the version bump threw)
+    private CompletableFuture<ActivityResponse> ingestActivity(ActivityRequest request, String activityId, AtomicBoolean written) {
+        //checked before any mode runs, the rollups and the AI prompt need a type
+        if (request.getType() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Activity type is required");
+        }
+        return switch (ingestionMode) {
+            case BLOCKING -> CompletableFuture.completedFuture(trackActivity(request, activityId, written));
+            case VIRTUAL_THREADS -> CompletableFuture.supplyAsync(() -> trackActivity(request, activityId, written), virtualThreadExecutor);
+            case REACTIVE -> trackActivityReactive(request, activityId, written).toFuture();
+            case GROUP_COMMIT -> trackActivityGroupCommit(request, activityId, written);
+        };
+    }
+
+    //ingestActivity for requests sent with an Idempotency-Key: a retry of a request that already went through
+    //gets the original response and nothing is saved or published again
+    public CompletableFuture<ActivityResponse> ingestActivity(ActivityRequest request, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return ingestActivity(request);
+        }
+        String userId = request.getUserId();
+        IdempotencyService.Reservation reservation = idempotencyService.reserve(userId, idempotencyKey, request);
+        if (reservation.previous() != null) {
+            return CompletableFuture.completedFuture(reservation.previous());
+        }
+        //the earlier attempt died after reserving, if it got as far as writing its activity that one is the answer
+        if (reservation.takenOver()) {
+            Optional<Activity> existing = activityRepository.findById(reservation.activityId());
+            if (existing.isPresent()) {
+                ActivityResponse response = mapToResponse(existing.get());
+                completeKey(userId, idempotencyKey, response);
+                return CompletableFuture.completedFuture(response);
+            }
+        }
+        //the key is only released when nothing was written, otherwise a retry would save the activity a second time.
+        //If the activity may be saved the key stays IN_PROGRESS and retries get 409 until its lease runs out, then the
+        //retry takes it over and finds the activity under the reserved id (which also makes a late write a duplicate key)
+        AtomicBoolean written = new AtomicBoolean();
+        CompletableFuture<ActivityResponse> result;
+        try {
+            result = ingestActivity(request, reservation.activityId(), written);
+        } catch (RuntimeException e) {
+            releaseIfNotWritten(userId, idempotencyKey, written);
+            throw e;
+        }
+        return result.whenComplete((response, error) -> {
+            if (error == null) {
+                completeKey(userId, idempotencyKey, response);
+            } else {
+                releaseIfNotWritten(userId, idempotencyKey, written);
+            }
+        });
+    }
+
+    //the activity is saved, a failure to store the response must not turn that into an error for the client.
+    //The key stays IN_PROGRESS and a retry after the lease finds the activity under the reserved id
+    private void completeKey(String userId, String idempotencyKey, ActivityResponse response) {
+        try {
+            idempotencyService.complete(userId, idempotencyKey, response);
+        } catch (RuntimeException e) {
+            log.error("Failed to store the response for Idempotency-Key {} of user {}", idempotencyKey, userId, e);
+        }
+    }
 
-    @Value("${kafka.topic.name}")
-    private String topicName;
+    private void releaseIfNotWritten(String userId, String idempotencyKey, AtomicBoolean written) {
+        if (!written.get()) {
+            idempotencyService.release(userId, idempotencyKey);
+            return;
+        }
+        log.warn("Request with Idempotency-Key {} of user {} failed after its activity was written, keeping the key reserved",
+                idempotencyKey, userId);
+    }
 
     //User enters activity name, calories,duration and clicks "ADD ACTIVITY" button
     public ActivityResponse trackActivity(ActivityRequest request) {
+        return trackActivity(request, null, new AtomicBoolean());
+    }
+
+    private ActivityResponse trackActivity(ActivityRequest request, String activityId, AtomicBoolean written) {
 
         //created another service for userValidation and defined a method validateUser in it then called it to verify userID
         boolean isValidUser = userValidationService.validateUser(request.getUserId());
@@ -33,27 +169,120 @@ public class ActivityService {
             throw new RuntimeException("Invalid User: " + request.getUserId());
         }
 
-        //converts DTO → Entity
-        Activity activity = Activity.builder()
+        //Save activity in database, its event is embedded in the same document and OutboxRelay publishes it to Kafka.
+        //insert, so an activity with a reserved id that already exists fails instead of being replaced
+        written.set(true);
+        Activity savedActivity = activityRepository.insert(toActivity(request, activityId));
+        //add it to the user's daily/weekly/monthly totals
+        activityRollupService.record(List.of(savedActivity));
+        //new ETag for the user's activity list
+        activityVersionService.bump(savedActivity.getUserId());
+
+        return mapToResponse(savedActivity);
+    }
+
+    //trackActivity with the write handed to ActivityGroupCommitter, the future completes when the batch it went into is saved.
+    //Continues on a virtual thread so callbacks of one caller (e.g. the idempotency store) never hold up the flusher
+    private CompletableFuture<ActivityResponse> trackActivityGroupCommit(ActivityRequest request, String activityId, AtomicBoolean written) {
+        if (!userValidationService.validateUser(request.getUserId())) {
+            throw new RuntimeException("Invalid User: " + request.getUserId());
+        }
+        CompletableFuture<Activity> saved = groupCommitter.getObject().submit(toActivity(request, activityId));
+        //set once it is queued, a full queue (503) rejects it before anything is written
+        written.set(true);
+        return saved.thenApplyAsync(this::mapToResponse, virtualThreadExecutor);
+    }
+
+    //Bulk version of trackActivity for wearable sync/backfill jobs:
+    //the user is validated once, all activities go to Mongo (each with its pending event) in one unordered insertMany,
+    //the relay publishes the events in producer batches
+    public BatchActivityResponse trackActivities(String userId, List<ActivityRequest> requests) {
+        if (requests.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Batch too large: " + requests.size() + " activities, max is " + maxBatchSize);
+        }
+        if (!userValidationService.validateUser(userId)) {
+            throw new RuntimeException("Invalid User: " + userId);
+        }
+
+        BatchItemResult[] results = new BatchItemResult[requests.size()];
+        List<Activity> activities = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            ActivityRequest request = requests.get(i);
+            if (request == null || request.getType() == null) {
+                results[i] = new BatchItemResult(i, null, BatchItemResult.Status.REJECTED, "Activity type is required");
+                continue;
+            }
+            request.setUserId(userId);
+            activities.add(toActivity(request));
+            positions.add(i);
+        }
+
+        Map<Integer, String> failures = activityBulkWriter.insertAll(activities);
+
+        List<Activity> savedActivities = new ArrayList<>();
+        for (int i = 0; i < activities.size(); i++) {
+            int index = positions.get(i);
+            Activity activity = activities.get(i);
+            String error = failures.get(i);
+            if (error == null) {
+                results[index] = new BatchItemResult(index, activity.getId(), BatchItemResult.Status.CREATED, null);
+                savedActivities.add(activity);
+            } else {
+                results[index] = new BatchItemResult(index, null, BatchItemResult.Status.FAILED, error);
+            }
+        }
+
+        activityRollupService.record(savedActivities);
+        if (!savedActivities.isEmpty()) {
+            activityVersionService.bump(userId);
+        }
+
+        return new BatchActivityResponse(savedActivities.size(),
+                requests.size() - savedActivities.size(),
+                Arrays.asList(results));
+    }
+
+    //Same steps as trackActivity without blocking any thread: validation over WebClient,
+    //reactive Mongo save (activity and event in one document) and the rollup/version updates are chained into one pipeline
+    public Mono<ActivityResponse> trackActivityReactive(ActivityRequest request) {
+        return trackActivityReactive(request, null, new AtomicBoolean());
+    }
+
+    private Mono<ActivityResponse> trackActivityReactive(ActivityRequest request, String activityId, AtomicBoolean written) {
+        return userValidationService.validateUserAsync(request.getUserId())
+                .flatMap(isValidUser -> {
+                    if (!isValidUser) {
+                        return Mono.error(new RuntimeException("Invalid User: " + request.getUserId()));
+                    }
+                    written.set(true);
+                    return reactiveActivityRepository.insert(toActivity(request, activityId));
+                })
+                .flatMap(savedActivity -> activityRollupService.recordReactive(savedActivity)
+                        .then(activityVersionService.bumpReactive(savedActivity.getUserId()))
+                        .thenReturn(savedActivity))
+                .map(this::mapToResponse);
+    }
+
+    //converts DTO → Entity, with its Kafka event pending so every save path writes both atomically
+    private Activity toActivity(ActivityRequest request) {
+        return toActivity(request, null);
+    }
+
+    //With an id already set auditing treats the entity as existing and skips @CreatedDate, so createdAt is set here
+    private Activity toActivity(ActivityRequest request, String activityId) {
+        return Activity.builder()
+                .id(activityId)
+                .createdAt(activityId != null ? LocalDateTime.now() : null)
                 .userId(request.getUserId())
                 .type(request.getType())
                 .duration(request.getDuration())
                 .caloriesBurned(request.getCaloriesBurned())
                 .startTime(request.getStartTime())
                 .additionalMetrics(request.getAdditionalMetrics())
+                .outbox(OutboxEvent.pending())
                 .build();
-
-        //Save activity in database
-        Activity savedActivity = activityRepository.save(activity);
-
-        //Publish event to Kafka (asynchronous)
-        try {
-            kafkaTemplate.send(topicName, savedActivity.getUserId(), savedActivity);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        //
-        return mapToResponse(savedActivity);
     }
 
     //Converts a DB entity (Activity) into a response DTO (ActivityResponse).
@@ -77,11 +306,109 @@ public class ActivityService {
     //Fetches all activities of a user and returns them as response DTO like we can see at bottom all activities are visible in our website.
     // with their name,duratn,calories
     //Used above functn (mapToResponse) inside it to fetch all activities as per DTO format as we don't want passwords, etc to be returred to user
-    public List<ActivityResponse> getUserActivities(String userId) {
-        List<Activity> activityList = activityRepository.findByUserId(userId);
+    //With a FieldSelection only the selected fields are read from Mongo (and written, see FieldSelection.applyToResponse)
+    public List<ActivityResponse> getUserActivities(String userId, FieldSelection selection) {
+        List<Activity> activityList = selection.includesAll()
+                ? activityRepository.findByUserId(userId)
+                : mongoTemplate.find(selection.applyTo(new Query(Criteria.where("userId").is(userId))), Activity.class);
         return activityList.stream()
                 .map(this::mapToResponse)
                 .collect(Collectors.toList());
     }
 
+    //Keyset pagination over (startTime, id) newest first, optionally limited to [from, to).
+    //Unlike getUserActivities only one page is ever loaded, however long the history is
+    public ActivityPage getUserActivitiesPage(String userId, String cursor, int limit, LocalDateTime from, LocalDateTime to,
+                                              FieldSelection selection) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        Query query = historyQuery(userId, from, to, cursor == null ? null : decodeCursor(cursor), selection)
+                .limit(pageSize + 1);   //one extra to know if there is a next page
+        List<Activity> activities = mongoTemplate.find(query, Activity.class);
+
+        String nextCursor = null;
+        if (activities.size() > pageSize) {
+            activities = activities.subList(0, pageSize);
+            nextCursor = encodeCursor(activities.get(pageSize - 1));
+        }
+        return new ActivityPage(activities.stream()
+                .map(this::mapToResponse)
+                .collect(Collectors.toList()), nextCursor);
+    }
+
+    //Writes the user's activities as NDJSON (one JSON document per line) straight from the Mongo cursor,
+    //so memory stays bounded by the cursor batch size instead of the history length
+    public void streamUserActivities(String userId, LocalDateTime from, LocalDateTime to, FieldSelection selection,
+                                     OutputStream out) throws IOException {
+        Query query = historyQuery(userId, from, to, null, selection).cursorBatchSize(500);
+        ObjectWriter writer = objectMapper.writer(selection.filters());
+        try (Stream<Activity> activities = mongoTemplate.stream(query, Activity.class)) {
+            Iterator<Activity> iterator = activities.iterator();
+            while (iterator.hasNext()) {
+                out.write(writer.writeValueAsBytes(mapToResponse(iterator.next())));
+                out.write('\n');
+            }
+            out.flush();
+        }
+    }
+
+    private Query historyQuery(String userId, LocalDateTime from, LocalDateTime to, HistoryCursor after,
+                               FieldSelection selection) {
+        List<Criteria> filters = new ArrayList<>();
+        filters.add(Criteria.where("userId").is(userId));
+        if (from != null) {
+            filters.add(Criteria.where("startTime").gte(from));
+        }
+        if (to != null) {
+            filters.add(Criteria.where("startTime").lt(to));
+        }
+        if (after != null) {
+            filters.add(after.toCriteria());
+        }
+        Query query = new Query(new Criteria().andOperator(filters))
+                .with(Sort.by(Sort.Direction.DESC, "startTime", "id"));
+        if (!selection.includesAll()) {
+            selection.applyTo(query);
+            query.fields().include("startTime");   //the page cursor needs it, the response filter drops it again if not selected
+        }
+        return query;
+    }
+
+    //cursor = base64url("startTime|id") of the last activity of the page, startTime "-" when it had none
+    private String encodeCursor(Activity last) {
+        String startTime = last.getStartTime() == null ? "-" : last.getStartTime().toString();
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((startTime + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private HistoryCursor decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+            LocalDateTime startTime = "-".equals(parts[0]) ? null : LocalDateTime.parse(parts[0]);
+            return new HistoryCursor(startTime, new ObjectId(parts[1]));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    //Position after which the next page starts. In descending order activities without startTime come last
+    private record HistoryCursor(LocalDateTime startTime, ObjectId id) {
+        Criteria toCriteria() {
+            if (startTime == null) {
+                return new Criteria().andOperator(
+                        Criteria.where("startTime").is(null),
+                        Criteria.where("id").lt(id));
+            }
+            return new Criteria().orOperator(
+                    Criteria.where("startTime").lt(startTime),
+                    new Criteria().andOperator(
+                            Criteria.where("startTime").is(startTime),
+                            Criteria.where("id").lt(id)),
+                    Criteria.where("startTime").is(null));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        virtualThreadExecutor.shutdown();
+    }
 }
@@ -0,0 +1,58 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.ActivityVersion;
+import com.fitness.fieldselection.FieldSelection;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+//Strong ETags for the activity list without reading the list: the ETag is the user's version counter (plus the user
+//and the field selection), so answering If-None-Match is one _id lookup in activity_versions.
+//Writers bump after saving and readers read the version before the list, so a response is never tagged newer than its data
+@Service
+@RequiredArgsConstructor
+public class ActivityVersionService {
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public void bump(String userId) {
+        mongoTemplate.upsert(byUser(userId), new Update().inc("version", 1), ActivityVersion.class);
+    }
+
+    //one round trip for all users of a group commit batch
+    public void bumpAll(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityVersion.class);
+        userIds.forEach(userId -> bulk.upsert(byUser(userId), new Update().inc("version", 1)));
+        bulk.execute();
+    }
+
+    public Mono<Void> bumpReactive(String userId) {
+        return reactiveMongoTemplate.upsert(byUser(userId), new Update().inc("version", 1), ActivityVersion.class).then();
+    }
+
+    public String etag(String userId, FieldSelection selection) {
+        ActivityVersion version = mongoTemplate.findById(userId, ActivityVersion.class);
+        long current = version == null ? 0 : version.getVersion();
+        //the user is part of the tag so two users at the same version never share one,
+        //different field selections are different representations so they need different tags
+        String user = Integer.toHexString(userId.hashCode());
+        String variant = selection.includesAll() ? "" : "-" + Integer.toHexString(selection.fields().hashCode());
+        return "\"" + user + "-" + current + variant + "\"";
+    }
+
+    private static Query byUser(String userId) {
+        return new Query(Criteria.where("userId").is(userId));
+    }
+}
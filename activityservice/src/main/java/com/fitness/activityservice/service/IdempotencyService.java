@@ -0,0 +1,157 @@
+package com.fitness.activityservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.model.IdempotencyRecord;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+//Dedup store behind the Idempotency-Key header of POST /api/activities.
+//The first request reserves the key with an insert into activity_idempotency_keys (the unique _id makes that atomic
+//across instances) and stores its response when done. Retries get that response back instead of creating another
+//activity, Kafka event and Gemini call. Completed keys are also kept in a local Caffeine cache so the usual
+//retry-right-after-a-timeout is answered without a Mongo round trip
+@Service
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    //Outcome of reserve: previous is the response of the request that already used the key (nothing to do),
+    //otherwise the key is reserved for this request and its activity has to be written under activityId.
+    //takenOver means an earlier attempt reserved the key and died, its activity may already exist under that id
+    public record Reservation(ActivityResponse previous, String activityId, boolean takenOver) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, IdempotencyRecord> completed;
+
+    //a reservation older than this belongs to a request that died, a retry may take it over
+    @Value("${activity.idempotency.lease:30s}")
+    private Duration lease;
+
+    public IdempotencyService(MongoTemplate mongoTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${activity.idempotency.hot-cache-size:100000}") long hotCacheSize,
+                              @Value("${activity.idempotency.hot-cache-ttl:10m}") Duration hotCacheTtl) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(hotCacheSize)
+                .expireAfterWrite(hotCacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completed, "idempotencyKeys");
+    }
+
+    //Either reserves the key for this request (call complete or release afterwards)
+    //or returns the response of the request that already used it.
+    //409 while the first request is still running, 422 when the key was used for a different request
+    public Reservation reserve(String userId, String key, ActivityRequest request) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String id = userId + ":" + key;
+        String requestHash = hash(request);
+
+        IdempotencyRecord cached = completed.getIfPresent(id);
+        if (cached != null) {
+            return new Reservation(replay(cached, requestHash), null, false);
+        }
+
+        String activityId = new ObjectId().toHexString();
+        try {
+            mongoTemplate.insert(IdempotencyRecord.builder()
+                    .id(id)
+                    .requestHash(requestHash)
+                    .status(IdempotencyRecord.Status.IN_PROGRESS)
+                    .activityId(activityId)
+                    .createdAt(Instant.now())
+                    .build());
+            return new Reservation(null, activityId, false);
+        } catch (DuplicateKeyException e) {
+            IdempotencyRecord existing = mongoTemplate.findById(id, IdempotencyRecord.class);
+            if (existing == null) {
+                //expired or released in between, the client can simply retry
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Request with this Idempotency-Key is in progress");
+            }
+            if (existing.getStatus() == IdempotencyRecord.Status.COMPLETED) {
+                completed.put(id, existing);
+                return new Reservation(replay(existing, requestHash), null, false);
+            }
+            IdempotencyRecord takenOver = takeOverStale(id, requestHash);
+            if (takenOver != null) {
+                //reservations from before activityId was stored get a fresh one
+                return takenOver.getActivityId() != null
+                        ? new Reservation(null, takenOver.getActivityId(), true)
+                        : new Reservation(null, activityId, false);
+            }
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Request with this Idempotency-Key is in progress");
+        }
+    }
+
+    public void complete(String userId, String key, ActivityResponse response) {
+        String id = userId + ":" + key;
+        IdempotencyRecord record = mongoTemplate.findAndModify(new Query(Criteria.where("id").is(id)),
+                new Update().set("status", IdempotencyRecord.Status.COMPLETED).set("response", response),
+                FindAndModifyOptions.options().returnNew(true),
+                IdempotencyRecord.class);
+        if (record != null) {
+            completed.put(id, record);
+        }
+    }
+
+    //the request failed, so a retry with the same key should run it again
+    public void release(String userId, String key) {
+        mongoTemplate.remove(new Query(Criteria.where("id").is(userId + ":" + key)
+                .and("status").is(IdempotencyRecord.Status.IN_PROGRESS)), IdempotencyRecord.class);
+    }
+
+    private ActivityResponse replay(IdempotencyRecord record, String requestHash) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Idempotency-Key was already used for a different request");
+        }
+        return record.getResponse();
+    }
+
+    //the reservation with the earlier attempt's activityId, null when it is not stale (or gone)
+    private IdempotencyRecord takeOverStale(String id, String requestHash) {
+        Query stale = new Query(Criteria.where("id").is(id)
+                .and("status").is(IdempotencyRecord.Status.IN_PROGRESS)
+                .and("requestHash").is(requestHash)
+                .and("createdAt").lt(Instant.now().minus(lease)));
+        return mongoTemplate.findAndModify(stale, new Update().set("createdAt", Instant.now()), IdempotencyRecord.class);
+    }
+
+    private String hash(ActivityRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(request)));
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.fitness.activityservice.service;
+
+//How POST /api/activities is executed, selected with activity.ingestion.mode
+public enum IngestionMode {
+    //validate, save and publish on the Tomcat worker thread (original behaviour)
+    BLOCKING,
+    //same blocking steps but on a virtual thread, the Tomcat worker is released while waiting
+    VIRTUAL_THREADS,
+    //WebClient validation and the reactive Mongo save (activity and its event) composed into one non-blocking pipeline
+    REACTIVE,
+    //validation on the request thread, the write is queued and flushed with the other concurrent requests
+    //as one bulk insert, events embedded (ActivityGroupCommitter)
+    GROUP_COMMIT
+}
@@ -0,0 +1,148 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.OutboxStatus;
+import com.fitness.eventcontract.ActivityEvent;
+import com.fitness.eventcontract.ActivityType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+//Publishes the pending events embedded in activities (Activity.outbox) to the activity-events topic in batches.
+//Each run claims up to batch-size PENDING events (or SENDING ones whose claim is older than the lease, i.e. a relay died),
+//sends them all, waits for the acks and removes the acknowledged ones. Failed ones go back to PENDING for the next run.
+//Delivery is at least once, the idempotent producer settings keep broker side retries from duplicating.
+//Events go out as eventcontract's ActivityEvent in its binary format (ActivityEventSerializer)
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxRelay {
+
+    private final MongoTemplate mongoTemplate;
+    private final KafkaTemplate<String, ActivityEvent> kafkaTemplate;
+
+    @Value("${kafka.topic.name}")
+    private String topicName;
+
+    @Value("${activity.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${activity.outbox.lease:30s}")
+    private Duration lease;
+
+    @Value("${activity.outbox.send-timeout:10s}")
+    private Duration sendTimeout;
+
+    @Scheduled(fixedDelayString = "${activity.outbox.relay-interval:200ms}")
+    public void relay() {
+        List<Activity> claimed;
+        boolean allSent;
+        do {
+            String claimToken = UUID.randomUUID().toString();
+            claimed = claimBatch(claimToken);
+            allSent = claimed.isEmpty() || publish(claimed, claimToken);
+        } while (allSent && claimed.size() == batchSize);   //keep draining a backlog, but back off when Kafka fails
+    }
+
+    private List<Activity> claimBatch(String claimToken) {
+        Instant now = Instant.now();
+        Criteria claimable = new Criteria().orOperator(
+                Criteria.where("outbox.status").is(OutboxStatus.PENDING),
+                Criteria.where("outbox.status").is(OutboxStatus.SENDING).and("outbox.claimedAt").lt(now.minus(lease)));
+
+        Query candidates = new Query(claimable)
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+                .limit(batchSize);
+        candidates.fields().include("id");
+        List<String> ids = mongoTemplate.find(candidates, Activity.class).stream()
+                .map(Activity::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        //the update re-checks the claimable condition, so an event another relay claimed in between is skipped
+        mongoTemplate.updateMulti(
+                new Query(new Criteria().andOperator(Criteria.where("id").in(ids), claimable)),
+                new Update()
+                        .set("outbox.status", OutboxStatus.SENDING)
+                        .set("outbox.claimToken", claimToken)
+                        .set("outbox.claimedAt", now)
+                        .inc("outbox.attempts", 1),
+                Activity.class);
+
+        return mongoTemplate.find(claimedBy(ids, claimToken).with(Sort.by(Sort.Direction.ASC, "createdAt")), Activity.class);
+    }
+
+    //returns true when every event of the batch was acknowledged
+    private boolean publish(List<Activity> activities, String claimToken) {
+        List<CompletableFuture<SendResult<String, ActivityEvent>>> sends = new ArrayList<>(activities.size());
+        for (Activity activity : activities) {
+            sends.add(kafkaTemplate.send(topicName, activity.getUserId(), toEvent(activity)));
+        }
+        kafkaTemplate.flush();
+
+        List<String> sent = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        long deadline = System.nanoTime() + sendTimeout.toNanos();
+        for (int i = 0; i < activities.size(); i++) {
+            try {
+                sends.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                sent.add(activities.get(i).getId());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.add(activities.get(i).getId());
+            } catch (Exception e) {
+                log.warn("Failed to publish the event of activity {}", activities.get(i).getId(), e);
+                failed.add(activities.get(i).getId());
+            }
+        }
+
+        //only while the claim is still ours: after a lease expiry another relay may own (and be publishing) the event
+        if (!sent.isEmpty()) {
+            mongoTemplate.updateMulti(claimedBy(sent, claimToken), new Update().unset("outbox"), Activity.class);
+        }
+        if (!failed.isEmpty()) {
+            mongoTemplate.updateMulti(claimedBy(failed, claimToken),
+                    new Update().set("outbox.status", OutboxStatus.PENDING).unset("outbox.claimToken"),
+                    Activity.class);
+        }
+        log.debug("Outbox relay published {} events, {} failed", sent.size(), failed.size());
+        return failed.isEmpty();
+    }
+
+    private static Query claimedBy(List<String> ids, String claimToken) {
+        return new Query(Criteria.where("id").in(ids).and("outbox.claimToken").is(claimToken));
+    }
+
+    private static ActivityEvent toEvent(Activity activity) {
+        return ActivityEvent.builder()
+                .id(activity.getId())
+                .userId(activity.getUserId())
+                .type(activity.getType() == null ? null : ActivityType.fromName(activity.getType().name()))
+                .duration(activity.getDuration())
+                .caloriesBurned(activity.getCaloriesBurned())
+                .startTime(activity.getStartTime())
+                .additionalMetrics(activity.getAdditionalMetrics())
+                .createdAt(activity.getCreatedAt())
+                .updatedAt(activity.getUpdatedAt())
+                .build();
+    }
+}
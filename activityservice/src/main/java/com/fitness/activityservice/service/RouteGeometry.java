@@ -0,0 +1,154 @@
+package com.fitness.activityservice.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+//Polyline encoding, simplification and distances for routes. Points are {lat, lng} in degrees
+final class RouteGeometry {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private RouteGeometry() {
+    }
+
+    //Google encoded polyline format with 5 decimals (about 1 m), the format map libraries decode natively
+    static String encode(List<double[]> points) {
+        StringBuilder out = new StringBuilder(points.size() * 6);
+        long previousLat = 0;
+        long previousLng = 0;
+        for (double[] point : points) {
+            long lat = Math.round(point[0] * 1e5);
+            long lng = Math.round(point[1] * 1e5);
+            encodeValue(out, lat - previousLat);
+            encodeValue(out, lng - previousLng);
+            previousLat = lat;
+            previousLng = lng;
+        }
+        return out.toString();
+    }
+
+    static List<double[]> decode(String polyline) {
+        List<double[]> points = new ArrayList<>();
+        int[] position = {0};
+        long lat = 0;
+        long lng = 0;
+        while (position[0] < polyline.length()) {
+            lat += decodeValue(polyline, position);
+            lng += decodeValue(polyline, position);
+            points.add(new double[]{lat / 1e5, lng / 1e5});
+        }
+        return points;
+    }
+
+    private static void encodeValue(StringBuilder out, long value) {
+        long shifted = value < 0 ? ~(value << 1) : value << 1;
+        while (shifted >= 0x20) {
+            out.append((char) ((0x20 | (shifted & 0x1F)) + 63));
+            shifted >>= 5;
+        }
+        out.append((char) (shifted + 63));
+    }
+
+    private static long decodeValue(String polyline, int[] position) {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (position[0] >= polyline.length()) {
+                throw new IllegalArgumentException("Truncated polyline");
+            }
+            b = polyline.charAt(position[0]++) - 63;
+            if (b < 0 || b > 63) {
+                throw new IllegalArgumentException("Invalid polyline character");
+            }
+            result |= (long) (b & 0x1F) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        return (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+    }
+
+    //Ramer-Douglas-Peucker: keeps the fewest points so that no dropped point is more than toleranceMeters off the line.
+    //Iterative so long tracks cannot overflow the stack
+    static List<double[]> simplify(List<double[]> points, double toleranceMeters) {
+        int n = points.size();
+        if (n < 3) {
+            return points;
+        }
+        //local equirectangular projection to meters, plenty accurate at the scale of one activity.
+        //Longitudes are unwrapped so a track crossing the antimeridian (179.99 -> -179.99) stays continuous
+        double cosLat = Math.cos(Math.toRadians(points.getFirst()[0]));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double lng = points.getFirst()[1];
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                lng += Math.IEEEremainder(points.get(i)[1] - points.get(i - 1)[1], 360);
+            }
+            x[i] = Math.toRadians(lng) * cosLat * EARTH_RADIUS_METERS;
+            y[i] = Math.toRadians(points.get(i)[0]) * EARTH_RADIUS_METERS;
+        }
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        double toleranceSquared = toleranceMeters * toleranceMeters;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[]{0, n - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int last = range[1];
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest != -1 && maxDistance > toleranceSquared) {
+                keep[farthest] = true;
+                ranges.push(new int[]{first, farthest});
+                ranges.push(new int[]{farthest, last});
+            }
+        }
+
+        List<double[]> simplified = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                simplified.add(points.get(i));
+            }
+        }
+        return simplified;
+    }
+
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return cx * cx + cy * cy;
+    }
+
+    static double lengthMeters(List<double[]> points) {
+        double total = 0;
+        for (int i = 1; i < points.size(); i++) {
+            total += distanceMeters(points.get(i - 1)[0], points.get(i - 1)[1], points.get(i)[0], points.get(i)[1]);
+        }
+        return total;
+    }
+
+    //haversine great circle distance
+    static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,159 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.ActivityRepository;
+import com.fitness.activityservice.dto.NearbyActivity;
+import com.fitness.activityservice.dto.RouteRequest;
+import com.fitness.activityservice.dto.RouteResponse;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityRoute;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.RouteLevel;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+//Routes of outdoor activities in activity_routes. Simplified versions for map rendering are computed once on upload,
+//reads only fetch the representation they return and the nearby search never fetches a polyline at all
+@Service
+@RequiredArgsConstructor
+public class RouteService {
+
+    private static final Set<ActivityType> ROUTE_TYPES = EnumSet.of(ActivityType.RUNNING, ActivityType.WALKING, ActivityType.CYCLING);
+
+    private final ActivityRepository activityRepository;
+    private final MongoTemplate mongoTemplate;
+
+    //meters, one precomputed level per value
+    @Value("${activity.routes.tolerances:5,20,100}")
+    private List<Double> tolerances;
+
+    @Value("${activity.routes.max-points:100000}")
+    private int maxPoints;
+
+    @Value("${activity.routes.default-max-points:1000}")
+    private int defaultMaxPoints;
+
+    //stores (or replaces) the route of one of the user's activities
+    public RouteResponse saveRoute(String userId, String activityId, RouteRequest request) {
+        Activity activity = activityRepository.findById(activityId)
+                .filter(found -> userId.equals(found.getUserId()))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Activity not found: " + activityId));
+        if (!ROUTE_TYPES.contains(activity.getType())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Routes are only stored for " + ROUTE_TYPES);
+        }
+
+        //round to the stored precision first so the levels are computed on exactly the points we keep
+        String polyline = RouteGeometry.encode(toPoints(request));
+        List<double[]> points = RouteGeometry.decode(polyline);
+
+        List<RouteLevel> levels = new ArrayList<>();
+        tolerances.stream().sorted().forEach(tolerance -> {
+            List<double[]> simplified = RouteGeometry.simplify(points, tolerance);
+            levels.add(new RouteLevel(tolerance, simplified.size(), RouteGeometry.encode(simplified)));
+        });
+
+        double[] start = points.getFirst();
+        ActivityRoute route = ActivityRoute.builder()
+                .activityId(activityId)
+                .userId(userId)
+                .type(activity.getType())
+                .start(new GeoJsonPoint(start[1], start[0]))
+                .distanceMeters(RouteGeometry.lengthMeters(points))
+                .pointCount(points.size())
+                .polyline(polyline)
+                .levels(levels)
+                .build();
+        mongoTemplate.save(route);
+        return new RouteResponse(activityId, route.getType(), route.getDistanceMeters(), 0, route.getPointCount(), polyline);
+    }
+
+    //The most detailed representation with at most maxPoints points (the coarsest level if even that is larger).
+    //The first read only gets the point counts, the second one the single polyline that is returned
+    public RouteResponse getRoute(String userId, String activityId, Integer requestedMaxPoints) {
+        int limit = requestedMaxPoints == null || requestedMaxPoints <= 0 ? defaultMaxPoints : requestedMaxPoints;
+        Query byActivity = new Query(Criteria.where("activityId").is(activityId).and("userId").is(userId));
+        byActivity.fields().include("type", "distanceMeters", "pointCount", "levels.toleranceMeters", "levels.pointCount");
+        ActivityRoute route = mongoTemplate.findOne(byActivity, ActivityRoute.class);
+        if (route == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No route for activity: " + activityId);
+        }
+
+        if (route.getPointCount() <= limit) {
+            Query full = new Query(Criteria.where("activityId").is(activityId));
+            full.fields().include("polyline");
+            String polyline = mongoTemplate.findOne(full, ActivityRoute.class).getPolyline();
+            return new RouteResponse(activityId, route.getType(), route.getDistanceMeters(), 0, route.getPointCount(), polyline);
+        }
+        //levels are stored finest first
+        RouteLevel chosen = route.getLevels().getLast();
+        for (RouteLevel level : route.getLevels()) {
+            if (level.getPointCount() <= limit) {
+                chosen = level;
+                break;
+            }
+        }
+        Query oneLevel = new Query(Criteria.where("activityId").is(activityId));
+        oneLevel.fields().elemMatch("levels", Criteria.where("toleranceMeters").is(chosen.getToleranceMeters()));
+        String polyline = mongoTemplate.findOne(oneLevel, ActivityRoute.class).getLevels().getFirst().getPolyline();
+        return new RouteResponse(activityId, route.getType(), route.getDistanceMeters(),
+                chosen.getToleranceMeters(), chosen.getPointCount(), polyline);
+    }
+
+    //the user's activities whose route starts within radiusMeters of (lat, lng), closest first
+    public List<NearbyActivity> findNearby(String userId, double lat, double lng, double radiusMeters, int limit) {
+        if (lat < -90 || lat > 90 || lng < -180 || lng > 180) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid coordinates");
+        }
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("start").nearSphere(new GeoJsonPoint(lng, lat)).maxDistance(radiusMeters))
+                .limit(Math.max(1, Math.min(limit, 100)));
+        query.fields().include("type", "start", "distanceMeters");
+
+        return mongoTemplate.find(query, ActivityRoute.class).stream()
+                .map(route -> new NearbyActivity(route.getActivityId(),
+                        route.getType(),
+                        route.getStart().getY(),
+                        route.getStart().getX(),
+                        RouteGeometry.distanceMeters(lat, lng, route.getStart().getY(), route.getStart().getX()),
+                        route.getDistanceMeters()))
+                .toList();
+    }
+
+    private List<double[]> toPoints(RouteRequest request) {
+        List<double[]> points;
+        if (request.getPolyline() != null && !request.getPolyline().isBlank()) {
+            try {
+                points = RouteGeometry.decode(request.getPolyline());
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid polyline: " + e.getMessage());
+            }
+        } else if (request.getPoints() != null) {
+            points = request.getPoints();
+        } else {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Either polyline or points is required");
+        }
+
+        if (points.size() < 2 || points.size() > maxPoints) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "A route needs between 2 and " + maxPoints + " points");
+        }
+        for (double[] point : points) {
+            if (point == null || point.length != 2
+                    || point[0] < -90 || point[0] > 90 || point[1] < -180 || point[1] > 180) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Points must be [lat, lng] pairs");
+            }
+        }
+        return points;
+    }
+}
@@ -0,0 +1,110 @@
+package com.fitness.activityservice.service;
+
+import java.util.Arrays;
+
+//Encoding of SensorSampleBlock columns.
+//Offsets are written as zigzag varints of their delta-of-delta, so a steady 1 Hz stream is one byte per sample.
+//Values are written as zigzag varints of the difference to the previous value, which for heart rate,
+//cadence or power is almost always a single byte too
+final class SampleBlockCodec {
+
+    private SampleBlockCodec() {
+    }
+
+    static byte[] encodeOffsets(long[] offsets, int from, int to) {
+        VarintWriter out = new VarintWriter(to - from + 8);
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = from; i < to; i++) {
+            long delta = offsets[i] - previous;
+            out.writeSigned(delta - previousDelta);
+            previous = offsets[i];
+            previousDelta = delta;
+        }
+        return out.toByteArray();
+    }
+
+    static long[] decodeOffsets(byte[] data, int count) {
+        VarintReader in = new VarintReader(data);
+        long[] offsets = new long[count];
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = previousDelta + in.readSigned();
+            previous += delta;
+            offsets[i] = previous;
+            previousDelta = delta;
+        }
+        return offsets;
+    }
+
+    static byte[] encodeValues(long[] values, int from, int to) {
+        VarintWriter out = new VarintWriter(to - from + 8);
+        long previous = 0;
+        for (int i = from; i < to; i++) {
+            out.writeSigned(values[i] - previous);
+            previous = values[i];
+        }
+        return out.toByteArray();
+    }
+
+    static long[] decodeValues(byte[] data, int count) {
+        VarintReader in = new VarintReader(data);
+        long[] values = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += in.readSigned();
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static final class VarintWriter {
+        private byte[] buffer;
+        private int size;
+
+        VarintWriter(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        void writeSigned(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            if (size + 10 > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + 10));
+            }
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[size++] = (byte) zigzag;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class VarintReader {
+        private final byte[] data;
+        private int position;
+
+        VarintReader(byte[] data) {
+            this.data = data;
+        }
+
+        long readSigned() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= data.length) {
+                    throw new IllegalStateException("Truncated sample block");
+                }
+                int b = data[position++] & 0xFF;
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IllegalStateException("Malformed varint in sample block");
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.ActivityRepository;
+import com.fitness.activityservice.dto.SampleSeries;
+import com.fitness.activityservice.dto.SensorSamplesRequest;
+import com.fitness.activityservice.dto.SensorSamplesResponse;
+import com.fitness.activityservice.model.SensorChannel;
+import com.fitness.activityservice.model.SensorSampleBlock;
+import com.fitness.activityservice.model.SensorSampleHead;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+//Stores heart rate/cadence/power/pace streams of an activity in activity_sensor_samples instead of Activity.metrics,
+//so the activity documents (and every list read) stay small however long the recording is
+@Service
+@RequiredArgsConstructor
+public class SensorSampleService {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final ActivityRepository activityRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${activity.samples.block-size:3600}")
+    private int blockSize;
+
+    @Value("${activity.samples.max-upload:200000}")
+    private int maxUpload;
+
+    //appends the uploaded samples, returns how many were stored per channel
+    public Map<SensorChannel, Integer> uploadSamples(String userId, String activityId, SensorSamplesRequest request) {
+        activityRepository.findById(activityId)
+                .filter(activity -> userId.equals(activity.getUserId()))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Activity not found: " + activityId));
+        if (request.getChannels() == null || request.getChannels().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No samples in request");
+        }
+        int total = request.getChannels().values().stream()
+                .mapToInt(series -> series == null || series.getOffsets() == null ? 0 : series.getOffsets().size())
+                .sum();
+        if (total > maxUpload) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Too many samples: " + total + ", max per upload is " + maxUpload);
+        }
+
+        //validate every channel before writing anything
+        Map<SensorChannel, long[][]> columns = new EnumMap<>(SensorChannel.class);
+        request.getChannels().forEach((channel, series) -> columns.put(channel, toColumns(channel, series)));
+
+        List<SensorSampleBlock> blocks = new ArrayList<>();
+        Map<SensorChannel, Integer> stored = new EnumMap<>(SensorChannel.class);
+        columns.forEach((channel, column) -> {
+            long[] offsets = column[0];
+            long[] values = column[1];
+            for (int from = 0; from < offsets.length; from += blockSize) {
+                int to = Math.min(offsets.length, from + blockSize);
+                blocks.add(SensorSampleBlock.builder()
+                        .id(SensorSampleBlock.idOf(activityId, channel, offsets[from]))
+                        .activityId(activityId)
+                        .userId(userId)
+                        .channel(channel)
+                        .firstOffset(offsets[from])
+                        .lastOffset(offsets[to - 1])
+                        .count(to - from)
+                        .offsets(SampleBlockCodec.encodeOffsets(offsets, from, to))
+                        .values(SampleBlockCodec.encodeValues(values, from, to))
+                        .build());
+            }
+            stored.put(channel, offsets.length);
+        });
+
+        //uploads only append, so reads can simply concatenate the blocks in firstOffset order.
+        //Each channel's range is claimed before anything is written, a conflict or failed insert gives the claims back
+        Map<SensorChannel, long[]> claimed = new EnumMap<>(SensorChannel.class);
+        try {
+            columns.forEach((channel, column) -> {
+                long first = column[0][0];
+                long last = column[0][column[0].length - 1];
+                claimed.put(channel, new long[]{claim(activityId, channel, first, last), last});
+            });
+            insertBlocks(blocks);
+        } catch (RuntimeException e) {
+            claimed.forEach((channel, range) -> release(activityId, channel, range[0], range[1]));
+            throw e;
+        }
+        return stored;
+    }
+
+    //Unordered, and blocks that already exist are skipped: an insert that failed part way gives the claims back
+    //with some blocks written, the retry of that upload then only adds the missing ones
+    private void insertBlocks(List<SensorSampleBlock> blocks) {
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SensorSampleBlock.class)
+                    .insert(blocks)
+                    .execute();
+        } catch (BulkOperationException e) {
+            boolean onlyDuplicates = e.getErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY);
+            if (!onlyDuplicates) {
+                throw e;
+            }
+        }
+    }
+
+    //Moves the channel's head to last if the upload starts after it, returns the previous head
+    private long claim(String activityId, SensorChannel channel, long first, long last) {
+        String id = SensorSampleHead.idOf(activityId, channel);
+        ensureHead(id, activityId, channel);
+        SensorSampleHead previous = mongoTemplate.findAndModify(
+                new Query(Criteria.where("id").is(id).and("lastOffset").lt(first)),
+                new Update().set("lastOffset", last),
+                SensorSampleHead.class);
+        if (previous == null) {
+            SensorSampleHead head = mongoTemplate.findById(id, SensorSampleHead.class);
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    channel + ": samples up to offset " + (head == null ? first : head.getLastOffset()) + " are already stored");
+        }
+        return previous.getLastOffset();
+    }
+
+    //only undone while no later upload moved the head on
+    private void release(String activityId, SensorChannel channel, long previous, long claimed) {
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("id").is(SensorSampleHead.idOf(activityId, channel)).and("lastOffset").is(claimed)),
+                new Update().set("lastOffset", previous),
+                SensorSampleHead.class);
+    }
+
+    //channels with samples from before the heads existed start from their last stored block
+    private void ensureHead(String id, String activityId, SensorChannel channel) {
+        if (mongoTemplate.exists(new Query(Criteria.where("id").is(id)), SensorSampleHead.class)) {
+            return;
+        }
+        Query lastBlock = new Query(Criteria.where("activityId").is(activityId).and("channel").is(channel))
+                .with(Sort.by(Sort.Direction.DESC, "firstOffset"))
+                .limit(1);
+        lastBlock.fields().include("lastOffset");
+        SensorSampleBlock block = mongoTemplate.findOne(lastBlock, SensorSampleBlock.class);
+        try {
+            mongoTemplate.insert(new SensorSampleHead(id, block == null ? -1 : block.getLastOffset()));
+        } catch (DuplicateKeyException e) {
+            //created by a concurrent upload of the same channel
+        }
+    }
+
+    //Samples of the requested channels (all when empty), averaged into buckets of resolutionSeconds.
+    //With maxPoints the buckets are widened as needed so no channel returns more than maxPoints samples
+    public SensorSamplesResponse getSamples(String userId, String activityId, Collection<SensorChannel> channels,
+                                            int resolutionSeconds, Integer maxPoints) {
+        Criteria criteria = Criteria.where("activityId").is(activityId).and("userId").is(userId);
+        if (channels != null && !channels.isEmpty()) {
+            criteria.and("channel").in(channels);
+        }
+        List<SensorSampleBlock> blocks = mongoTemplate.find(new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "channel", "firstOffset")), SensorSampleBlock.class);
+
+        Map<SensorChannel, List<SensorSampleBlock>> byChannel = new EnumMap<>(SensorChannel.class);
+        blocks.forEach(block -> byChannel.computeIfAbsent(block.getChannel(), channel -> new ArrayList<>()).add(block));
+
+        Map<SensorChannel, Long> resolutions = new EnumMap<>(SensorChannel.class);
+        Map<SensorChannel, SampleSeries> series = new EnumMap<>(SensorChannel.class);
+        byChannel.forEach((channel, channelBlocks) -> {
+            long bucketMs = Math.max(0, resolutionSeconds) * 1000L;
+            if (maxPoints != null && maxPoints > 0) {
+                int count = channelBlocks.stream().mapToInt(SensorSampleBlock::getCount).sum();
+                if (count > maxPoints) {
+                    long span = channelBlocks.getLast().getLastOffset() - channelBlocks.getFirst().getFirstOffset() + 1;
+                    bucketMs = Math.max(bucketMs, (span + maxPoints - 1) / maxPoints);
+                }
+            }
+            resolutions.put(channel, bucketMs);
+            series.put(channel, downsample(channel, channelBlocks, bucketMs));
+        });
+        return new SensorSamplesResponse(activityId, resolutions, series);
+    }
+
+    //averages consecutive samples falling into the same bucket, bucket offset = start of the bucket. 0 keeps the raw samples
+    private SampleSeries downsample(SensorChannel channel, List<SensorSampleBlock> blocks, long bucketMs) {
+        List<Long> offsets = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        long currentBucket = -1;
+        double sum = 0;
+        int count = 0;
+        for (SensorSampleBlock block : blocks) {
+            long[] blockOffsets = SampleBlockCodec.decodeOffsets(block.getOffsets(), block.getCount());
+            long[] blockValues = SampleBlockCodec.decodeValues(block.getValues(), block.getCount());
+            for (int i = 0; i < blockOffsets.length; i++) {
+                if (bucketMs == 0) {
+                    offsets.add(blockOffsets[i]);
+                    values.add(channel.fromStored(blockValues[i]));
+                    continue;
+                }
+                long bucket = blockOffsets[i] / bucketMs;
+                if (bucket != currentBucket && count > 0) {
+                    offsets.add(currentBucket * bucketMs);
+                    values.add(channel.fromStored(sum / count));
+                    sum = 0;
+                    count = 0;
+                }
+                currentBucket = bucket;
+                sum += blockValues[i];
+                count++;
+            }
+        }
+        if (count > 0) {
+            offsets.add(currentBucket * bucketMs);
+            values.add(channel.fromStored(sum / count));
+        }
+        return new SampleSeries(offsets, values);
+    }
+
+    //checks one uploaded series and turns it into stored (scaled) columns
+    private long[][] toColumns(SensorChannel channel, SampleSeries series) {
+        if (series == null || series.getOffsets() == null || series.getValues() == null
+                || series.getOffsets().isEmpty() || series.getOffsets().size() != series.getValues().size()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    channel + ": offsets and values must be non empty and of the same length");
+        }
+        int size = series.getOffsets().size();
+        long[] offsets = new long[size];
+        long[] values = new long[size];
+        for (int i = 0; i < size; i++) {
+            Long offset = series.getOffsets().get(i);
+            Double value = series.getValues().get(i);
+            if (offset == null || offset < 0 || (i > 0 && offset <= offsets[i - 1])) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        channel + ": offsets must be increasing and not negative (index " + i + ")");
+            }
+            if (value == null || !Double.isFinite(value)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, channel + ": invalid value at index " + i);
+            }
+            offsets[i] = offset;
+            values[i] = channel.toStored(value);
+        }
+        return new long[][]{offsets, values};
+    }
+}
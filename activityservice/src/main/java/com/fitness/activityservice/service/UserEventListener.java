@@ -0,0 +1,40 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.UserCreatedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.AbstractConsumerSeekAware;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+//Fills UserExistenceReplica from the user-events topic published by userservice.
+//Every instance needs every event, so each one has its own consumer group, named after activity.user-replica.instance-id
+//so a restart joins the same group instead of leaving one more behind. The replica is in memory, so every assignment
+//seeks to the start of the (compacted) topic regardless of the committed offsets.
+//Users registered before user-events existed get there through userservice's POST /actuator/userevents
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UserEventListener extends AbstractConsumerSeekAware {
+
+    private final UserExistenceReplica userExistenceReplica;
+
+    @KafkaListener(topics = "${kafka.topic.user-events}",
+            groupId = "${spring.application.name}-user-replica-${activity.user-replica.instance-id}",
+            properties = "auto.offset.reset=earliest")
+    public void onUserCreated(UserCreatedEvent event) {
+        if (event.getKeycloakId() != null) {
+            log.debug("Replicating user {}", event.getKeycloakId());
+            userExistenceReplica.add(event.getKeycloakId());
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        super.onPartitionsAssigned(assignments, callback);
+        callback.seekToBeginning(assignments.keySet());
+    }
+}
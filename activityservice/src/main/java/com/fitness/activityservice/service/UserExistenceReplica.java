@@ -0,0 +1,35 @@
+package com.fitness.activityservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+//Local copy of which users (keycloakIds) exist, fed by user-events from userservice and by successful /validate calls.
+//The bloom filter answers most "never seen" lookups without touching the exact set,
+//the bounded exact set confirms bloom hits so a false positive never lets an unknown user through.
+//A miss here only means "ask USER-SERVICE", never "user does not exist"
+@Component
+public class UserExistenceReplica {
+
+    private final BloomFilter bloomFilter;
+    private final Cache<String, Boolean> knownUsers;
+
+    public UserExistenceReplica(@Value("${activity.user-replica.expected-users:1000000}") long expectedUsers,
+                                @Value("${activity.user-replica.false-positive-rate:0.01}") double falsePositiveRate,
+                                @Value("${activity.user-replica.max-confirmed:200000}") long maxConfirmed) {
+        this.bloomFilter = new BloomFilter(expectedUsers, falsePositiveRate);
+        this.knownUsers = Caffeine.newBuilder()
+                .maximumSize(maxConfirmed)
+                .build();
+    }
+
+    public boolean contains(String keycloakId) {
+        return bloomFilter.mightContain(keycloakId) && knownUsers.getIfPresent(keycloakId) != null;
+    }
+
+    public void add(String keycloakId) {
+        bloomFilter.put(keycloakId);
+        knownUsers.put(keycloakId, Boolean.TRUE);
+    }
+}
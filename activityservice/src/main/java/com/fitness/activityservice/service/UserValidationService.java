@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
 
 //this file will actually send req to endpt and then response will come here as true/false
@@ -13,18 +14,49 @@ import org.springframework.web.reactive.function.client.WebClientResponseExcepti
 @Slf4j
 public class UserValidationService {
     private final WebClient userServiceWebClient;
+    private final UserExistenceReplica userExistenceReplica;
 
     public boolean validateUser(String userId) {
+        //users replicated from user-events (or validated before) don't need a call to USER-SERVICE
+        if (userExistenceReplica.contains(userId)) {
+            return true;
+        }
         log.info("Calling User Service for {}", userId);
         try {
-            return userServiceWebClient.get()
+            Boolean exists = userServiceWebClient.get()
                     .uri("/api/users/{userId}/validate", userId)
                     .retrieve()
                     .bodyToMono(Boolean.class)
                     .block();
+            if (Boolean.TRUE.equals(exists)) {
+                userExistenceReplica.add(userId);
+                return true;
+            }
         } catch (WebClientResponseException e) {
             e.printStackTrace();
         }
         return false;
     }
+
+    //non-blocking version of validateUser for the reactive ingestion mode, same outcome on errors (false)
+    public Mono<Boolean> validateUserAsync(String userId) {
+        if (userExistenceReplica.contains(userId)) {
+            return Mono.just(true);
+        }
+        log.info("Calling User Service for {}", userId);
+        return userServiceWebClient.get()
+                .uri("/api/users/{userId}/validate", userId)
+                .retrieve()
+                .bodyToMono(Boolean.class)
+                .defaultIfEmpty(false)
+                .doOnNext(exists -> {
+                    if (exists) {
+                        userExistenceReplica.add(userId);
+                    }
+                })
+                .onErrorResume(WebClientResponseException.class, e -> {
+                    log.error("User validation failed for {}", userId, e);
+                    return Mono.just(false);
+                });
+    }
 }
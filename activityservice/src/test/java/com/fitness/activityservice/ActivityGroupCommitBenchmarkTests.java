@@ -0,0 +1,131 @@
+package com.fitness.activityservice;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.OutboxEvent;
+import com.fitness.activityservice.service.ActivityBulkWriter;
+import com.fitness.activityservice.service.ActivityGroupCommitter;
+import com.fitness.activityservice.service.ActivityRollupService;
+import com.fitness.activityservice.service.ActivityVersionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+//Throughput vs latency of per-request writes (what BLOCKING does) against GROUP_COMMIT at several linger values,
+//with 64 concurrent callers against a local Mongo. Prints one line per configuration.
+//Not part of the normal build, run with: mvn test -Dtest=ActivityGroupCommitBenchmarkTests -Dbenchmark=true
+@DataMongoTest
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ActivityGroupCommitBenchmarkTests {
+
+	private static final int CALLERS = 64;
+	private static final int WRITES_PER_CALLER = 200;
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+	@Autowired
+	private ActivityRepository activityRepository;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	private ActivityBulkWriter bulkWriter;
+	private ActivityRollupService rollups;
+	private ActivityVersionService versions;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.getDb().drop();
+		//only the blocking code paths are used, so no reactive template is needed
+		bulkWriter = new ActivityBulkWriter(mongoTemplate);
+		rollups = new ActivityRollupService(mongoTemplate, null, new SimpleMeterRegistry());
+		versions = new ActivityVersionService(mongoTemplate, null);
+	}
+
+	@Test
+	void throughputVersusLatency() throws Exception {
+		//same writes trackActivity does for one activity
+		report("per request", run(activity -> {
+			Activity saved = activityRepository.save(activity);
+			rollups.record(List.of(saved));
+			versions.bump(saved.getUserId());
+		}));
+
+		for (Duration linger : List.of(Duration.ofMillis(1), Duration.ofMillis(2), Duration.ofMillis(5), Duration.ofMillis(10))) {
+			ActivityGroupCommitter committer = new ActivityGroupCommitter(bulkWriter, rollups, versions,
+					new SimpleMeterRegistry(), 256, linger, 10_000);
+			try {
+				report("group commit, linger " + linger.toMillis() + "ms", run(activity -> committer.submit(activity).join()));
+			} finally {
+				committer.stop();
+			}
+		}
+	}
+
+	//runs CALLERS threads doing WRITES_PER_CALLER writes each, returns {wall time, per write latencies} in ns
+	private long[][] run(Consumer<Activity> write) throws Exception {
+		long[] latencies = new long[CALLERS * WRITES_PER_CALLER];
+		ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+		long start = System.nanoTime();
+		List<Future<?>> done = new ArrayList<>();
+		for (int c = 0; c < CALLERS; c++) {
+			int caller = c;
+			done.add(callers.submit(() -> {
+				for (int i = 0; i < WRITES_PER_CALLER; i++) {
+					long writeStart = System.nanoTime();
+					write.accept(activity(caller));
+					latencies[caller * WRITES_PER_CALLER + i] = System.nanoTime() - writeStart;
+				}
+			}));
+		}
+		for (Future<?> future : done) {
+			future.get();
+		}
+		long wall = System.nanoTime() - start;
+		callers.shutdown();
+		return new long[][]{{wall}, latencies};
+	}
+
+	private static Activity activity(int caller) {
+		return Activity.builder()
+				.userId("user-" + caller % 16)
+				.type(ActivityType.RUNNING)
+				.duration(30)
+				.caloriesBurned(300)
+				.startTime(LocalDateTime.now())
+				.outbox(OutboxEvent.pending())
+				.build();
+	}
+
+	private static void report(String name, long[][] result) {
+		long wall = result[0][0];
+		long[] latencies = result[1];
+		Arrays.sort(latencies);
+		System.out.printf("%-28s %8.0f writes/s   p50 %6.2f ms   p99 %6.2f ms%n",
+				name,
+				latencies.length / (wall / 1e9),
+				latencies[latencies.length / 2] / 1e6,
+				latencies[(int) (latencies.length * 0.99)] / 1e6);
+	}
+}
@@ -0,0 +1,163 @@
+package com.fitness.activityservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.service.ActivityBulkWriter;
+import com.fitness.activityservice.service.ActivityRollupService;
+import com.fitness.activityservice.service.ActivityService;
+import com.fitness.activityservice.service.ActivityVersionService;
+import com.fitness.activityservice.service.IdempotencyService;
+import com.fitness.activityservice.service.IngestionMode;
+import com.fitness.activityservice.service.UserValidationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+//Requests/s and thread usage of POST /api/activities in the BLOCKING, VIRTUAL_THREADS and REACTIVE ingestion modes.
+//Each request goes through ActivityService.ingestActivity the way the controller calls it: a pool of 200 "servlet"
+//threads (Tomcat's default max) calls it and is free again once it returns, up to IN_FLIGHT requests are open at a time.
+//The USER-SERVICE call is replaced by a fixed delay, which is what ties up threads in BLOCKING mode.
+//Not part of the normal build, run with: mvn test -Dtest=ActivityIngestionModeBenchmarkTests -Dbenchmark=true
+@DataMongoTest
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Import({ActivityService.class, ActivityBulkWriter.class, ActivityRollupService.class, ActivityVersionService.class,
+		IdempotencyService.class, ActivityIngestionModeBenchmarkTests.Beans.class})
+class ActivityIngestionModeBenchmarkTests {
+
+	private static final int REQUESTS = 20_000;
+	private static final int IN_FLIGHT = 1_000;
+	private static final int SERVLET_THREADS = 200;
+	private static final Duration USER_SERVICE_LATENCY = Duration.ofMillis(20);
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+	@TestConfiguration
+	static class Beans {
+		@Bean
+		ObjectMapper objectMapper() {
+			return new ObjectMapper().findAndRegisterModules();
+		}
+
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+	}
+
+	@MockitoBean
+	private UserValidationService userValidationService;
+
+	@Autowired
+	private ActivityService activityService;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.getDb().drop();
+		when(userValidationService.validateUser(anyString())).thenAnswer(invocation -> {
+			Thread.sleep(USER_SERVICE_LATENCY);
+			return true;
+		});
+		when(userValidationService.validateUserAsync(anyString()))
+				.thenAnswer(invocation -> Mono.delay(USER_SERVICE_LATENCY).thenReturn(true));
+	}
+
+	@Test
+	void requestsPerSecondAndThreads() throws Exception {
+		//warm up the Mongo pools and the JIT, not reported
+		run(IngestionMode.BLOCKING, REQUESTS / 10);
+
+		for (IngestionMode mode : List.of(IngestionMode.BLOCKING, IngestionMode.VIRTUAL_THREADS, IngestionMode.REACTIVE)) {
+			report(mode, run(mode, REQUESTS));
+		}
+	}
+
+	//returns {wall time ns, peak live platform threads, per request latencies ns}
+	private long[][] run(IngestionMode mode, int requests) throws Exception {
+		ReflectionTestUtils.setField(activityService, "ingestionMode", mode);
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+
+		long[] latencies = new long[requests];
+		ExecutorService servletThreads = Executors.newFixedThreadPool(SERVLET_THREADS);
+		Semaphore inFlight = new Semaphore(IN_FLIGHT);
+		CountDownLatch done = new CountDownLatch(requests);
+		long start = System.nanoTime();
+		for (int i = 0; i < requests; i++) {
+			int request = i;
+			inFlight.acquire();
+			long requestStart = System.nanoTime();
+			servletThreads.execute(() -> activityService.ingestActivity(request(request))
+					.whenComplete((response, error) -> {
+						if (error != null) {
+							error.printStackTrace();
+						}
+						latencies[request] = System.nanoTime() - requestStart;
+						inFlight.release();
+						done.countDown();
+					}));
+		}
+		done.await();
+		long wall = System.nanoTime() - start;
+		servletThreads.shutdown();
+		return new long[][]{{wall, threads.getPeakThreadCount()}, latencies};
+	}
+
+	private static ActivityRequest request(int request) {
+		ActivityRequest activity = new ActivityRequest();
+		activity.setUserId("user-" + request % 64);
+		activity.setType(ActivityType.RUNNING);
+		activity.setDuration(30);
+		activity.setCaloriesBurned(300);
+		activity.setStartTime(LocalDateTime.now());
+		return activity;
+	}
+
+	private static void report(IngestionMode mode, long[][] result) {
+		long wall = result[0][0];
+		long peakThreads = result[0][1];
+		long[] latencies = result[1];
+		Arrays.sort(latencies);
+		System.out.printf("%-16s %8.0f requests/s   p50 %7.2f ms   p99 %7.2f ms   peak live threads %4d%n",
+				mode,
+				latencies.length / (wall / 1e9),
+				latencies[latencies.length / 2] / 1e6,
+				latencies[(int) (latencies.length * 0.99)] / 1e6,
+				peakThreads);
+	}
+}
@@ -0,0 +1,77 @@
+package com.fitness.activityservice;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Runs the activity queries against a throwaway Mongo and fails if the winning plan is a collection scan
+//(or needs an in memory sort), i.e. if the indexes declared on Activity stop matching the access patterns
+@DataMongoTest(properties = "spring.data.mongodb.auto-index-creation=true")
+@Testcontainers(disabledWithoutDocker = true)
+class ActivityRepositoryIndexTests {
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+	@Autowired
+	private ActivityRepository activityRepository;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@BeforeEach
+	void setUp() {
+		activityRepository.deleteAll();
+		for (int i = 0; i < 20; i++) {
+			activityRepository.save(Activity.builder()
+					.userId("user-" + (i % 4))
+					.type(ActivityType.RUNNING)
+					.duration(30)
+					.caloriesBurned(300)
+					.startTime(LocalDateTime.now().minusDays(i))
+					.build());
+		}
+	}
+
+	@Test
+	void findByUserIdUsesIndex() {
+		assertThat(activityRepository.findByUserId("user-1")).isNotEmpty();
+
+		Document plan = winningPlan(new Document("userId", "user-1"), null);
+
+		assertThat(plan.toJson()).doesNotContain("COLLSCAN");
+	}
+
+	@Test
+	void historyPageUsesIndexForFilterAndSort() {
+		Document filter = new Document("userId", "user-1")
+				.append("startTime", new Document("$gte", LocalDateTime.now().minusDays(10)));
+		Document sort = new Document("startTime", -1).append("_id", -1);
+
+		Document plan = winningPlan(filter, sort);
+
+		assertThat(plan.toJson()).doesNotContain("COLLSCAN").doesNotContain("\"SORT\"");
+	}
+
+	private Document winningPlan(Document filter, Document sort) {
+		var find = mongoTemplate.getCollection("activities").find(filter);
+		if (sort != null) {
+			find = find.sort(sort);
+		}
+		return find.explain().get("queryPlanner", Document.class).get("winningPlan", Document.class);
+	}
+}
@@ -0,0 +1,130 @@
+package com.fitness.activityservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class RouteGeometryTests {
+
+	//example from Google's encoded polyline algorithm documentation
+	private static final List<double[]> REFERENCE_POINTS = List.of(
+			new double[]{38.5, -120.2},
+			new double[]{40.7, -120.95},
+			new double[]{43.252, -126.453});
+	private static final String REFERENCE_POLYLINE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+	@Test
+	void encodesGoogleReferencePolyline() {
+		assertThat(RouteGeometry.encode(REFERENCE_POINTS)).isEqualTo(REFERENCE_POLYLINE);
+	}
+
+	@Test
+	void decodesGoogleReferencePolyline() {
+		assertSamePoints(RouteGeometry.decode(REFERENCE_POLYLINE), REFERENCE_POINTS);
+	}
+
+	@Test
+	void emptyRoute() {
+		assertThat(RouteGeometry.encode(List.of())).isEmpty();
+		assertThat(RouteGeometry.decode("")).isEmpty();
+	}
+
+	@Test
+	void roundTripsNegativeCoordinatesAndTheAntimeridian() {
+		List<double[]> points = List.of(
+				new double[]{-33.86882, 151.20929},
+				new double[]{-16.5, 179.99999},
+				new double[]{-16.5, -179.99999},
+				new double[]{-0.00001, -0.00001},
+				new double[]{0, 0},
+				new double[]{89.99999, -180},
+				new double[]{-90, 180});
+
+		assertSamePoints(RouteGeometry.decode(RouteGeometry.encode(points)), points);
+	}
+
+	@Test
+	void roundsToFiveDecimals() {
+		List<double[]> decoded = RouteGeometry.decode(RouteGeometry.encode(List.<double[]>of(new double[]{52.123456, 13.000004})));
+
+		assertThat(decoded.getFirst()[0]).isCloseTo(52.12346, within(1e-9));
+		assertThat(decoded.getFirst()[1]).isCloseTo(13.0, within(1e-9));
+	}
+
+	@Test
+	void rejectsMalformedPolylines() {
+		assertThatThrownBy(() -> RouteGeometry.decode("_p~iF~ps|")).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> RouteGeometry.decode("_p~iF ps|U")).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void simplifyKeepsSingleAndTwoPointRoutes() {
+		List<double[]> single = List.<double[]>of(new double[]{48.1, 11.5});
+		List<double[]> two = List.of(new double[]{48.1, 11.5}, new double[]{48.2, 11.6});
+
+		assertThat(RouteGeometry.simplify(single, 5)).containsExactlyElementsOf(single);
+		assertThat(RouteGeometry.simplify(two, 5)).containsExactlyElementsOf(two);
+	}
+
+	@Test
+	void simplifyDropsCollinearPoints() {
+		List<double[]> line = new ArrayList<>();
+		for (int i = 0; i <= 100; i++) {
+			line.add(new double[]{48.1 + i * 0.0001, 11.5 + i * 0.0001});
+		}
+
+		assertThat(RouteGeometry.simplify(line, 1)).containsExactly(line.getFirst(), line.getLast());
+	}
+
+	@Test
+	void simplifyDropsRepeatedPoints() {
+		double[] point = {48.1, 11.5};
+
+		assertThat(RouteGeometry.simplify(List.of(point, point, point, point), 1)).containsExactly(point, point);
+	}
+
+	@Test
+	void simplifyKeepsCornersBeyondTheTolerance() {
+		double[] start = {48.1, 11.5};
+		double[] corner = {48.1, 11.51};      //about 740 m east
+		double[] end = {48.11, 11.51};        //about 1.1 km north of the corner
+		double[] onTheWay = {48.1, 11.505};
+
+		assertThat(RouteGeometry.simplify(List.of(start, onTheWay, corner, end), 20)).containsExactly(start, corner, end);
+	}
+
+	@Test
+	void simplifyAcrossTheAntimeridian() {
+		//a straight eastbound line crossing 180°, the longitudes jump from 179.99.. to -179.99..
+		List<double[]> line = new ArrayList<>();
+		for (int i = -50; i <= 50; i++) {
+			double lng = 180 + i * 0.0001;
+			line.add(new double[]{-16.5, lng > 180 ? lng - 360 : lng});
+		}
+
+		assertThat(RouteGeometry.simplify(line, 1)).containsExactly(line.getFirst(), line.getLast());
+	}
+
+	@Test
+	void distancesAcrossTheAntimeridianAndHemispheres() {
+		//0.0002° of longitude on the equator is about 22 m, not most of the way around the earth
+		assertThat(RouteGeometry.distanceMeters(0, 179.9999, 0, -179.9999)).isCloseTo(22.24, within(0.01));
+		//one degree of latitude is about 111.2 km in both hemispheres
+		assertThat(RouteGeometry.distanceMeters(-0.5, -70, 0.5, -70)).isCloseTo(111_195, within(1.0));
+		assertThat(RouteGeometry.lengthMeters(List.of(new double[]{0, 179.9999}, new double[]{0, -179.9999},
+				new double[]{0, -179.9997}))).isCloseTo(44.48, within(0.02));
+	}
+
+	private static void assertSamePoints(List<double[]> actual, List<double[]> expected) {
+		assertThat(actual).hasSameSizeAs(expected);
+		for (int i = 0; i < expected.size(); i++) {
+			assertThat(actual.get(i)[0]).as("lat %d", i).isCloseTo(expected.get(i)[0], within(1e-9));
+			assertThat(actual.get(i)[1]).as("lng %d", i).isCloseTo(expected.get(i)[1], within(1e-9));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.fitness.activityservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SampleBlockCodecTests {
+
+	@Test
+	void emptyBlock() {
+		long[] none = new long[0];
+
+		assertThat(SampleBlockCodec.encodeOffsets(none, 0, 0)).isEmpty();
+		assertThat(SampleBlockCodec.encodeValues(none, 0, 0)).isEmpty();
+		assertThat(SampleBlockCodec.decodeOffsets(new byte[0], 0)).isEmpty();
+		assertThat(SampleBlockCodec.decodeValues(new byte[0], 0)).isEmpty();
+	}
+
+	@Test
+	void singleSample() {
+		assertRoundTrip(new long[]{1_000}, new long[]{142});
+	}
+
+	@Test
+	void steadyOneHertzStreamIsOneBytePerSample() {
+		long[] offsets = new long[3600];
+		long[] values = new long[3600];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = i * 1000L;
+			values[i] = 120 + i % 5;
+		}
+
+		assertRoundTrip(offsets, values);
+		//one extra byte for the 1000 ms interval and the first absolute value, the rest are single byte deltas
+		assertThat(SampleBlockCodec.encodeOffsets(offsets, 0, offsets.length)).hasSize(offsets.length + 1);
+		assertThat(SampleBlockCodec.encodeValues(values, 0, values.length)).hasSize(values.length + 1);
+	}
+
+	@Test
+	void irregularIntervals() {
+		assertRoundTrip(new long[]{0, 3, 1_000, 1_001, 60_000, 60_250, 3_600_000},
+				new long[]{80, 81, 79, 150, 151, 90, 60});
+	}
+
+	@Test
+	void negativeDeltas() {
+		//shrinking intervals give negative delta-of-deltas, falling values negative deltas
+		assertRoundTrip(new long[]{0, 10_000, 15_000, 17_000, 17_500, 17_600},
+				new long[]{200, 150, 90, 0, -40, -41});
+	}
+
+	@Test
+	void largeValues() {
+		assertRoundTrip(new long[]{0, 1L << 40, (1L << 40) + 1, Long.MAX_VALUE / 2},
+				new long[]{Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MAX_VALUE});
+	}
+
+	@Test
+	void encodesOnlyTheRequestedRange() {
+		long[] offsets = {0, 1_000, 2_000, 3_500, 4_000};
+		long[] values = {10, 20, 30, 40, 50};
+
+		byte[] encodedOffsets = SampleBlockCodec.encodeOffsets(offsets, 2, 5);
+		byte[] encodedValues = SampleBlockCodec.encodeValues(values, 2, 5);
+
+		assertThat(SampleBlockCodec.decodeOffsets(encodedOffsets, 3)).containsExactly(2_000, 3_500, 4_000);
+		assertThat(SampleBlockCodec.decodeValues(encodedValues, 3)).containsExactly(30, 40, 50);
+	}
+
+	@Test
+	void truncatedBlockIsRejected() {
+		byte[] encoded = SampleBlockCodec.encodeValues(new long[]{1, 100_000, 2}, 0, 3);
+		byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+
+		assertThatThrownBy(() -> SampleBlockCodec.decodeValues(truncated, 3))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	private static void assertRoundTrip(long[] offsets, long[] values) {
+		byte[] encodedOffsets = SampleBlockCodec.encodeOffsets(offsets, 0, offsets.length);
+		byte[] encodedValues = SampleBlockCodec.encodeValues(values, 0, values.length);
+
+		assertThat(SampleBlockCodec.decodeOffsets(encodedOffsets, offsets.length)).containsExactly(offsets);
+		assertThat(SampleBlockCodec.decodeValues(encodedValues, values.length)).containsExactly(values);
+	}
+}
@@ -0,0 +1,19 @@
+package com.fitness.aiservice.config;
+
+import com.fitness.aiservice.service.ProcessingMode;
+import org.springframework.context.annotation.Conditional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//Registers the bean only when ai.processing.mode is one of the given modes (SEQUENTIAL when not set)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Conditional(OnProcessingModeCondition.class)
+public @interface ConditionalOnProcessingMode {
+    ProcessingMode[] value();
+}
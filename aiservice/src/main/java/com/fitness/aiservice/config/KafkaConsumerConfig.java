@@ -0,0 +1,32 @@
+package com.fitness.aiservice.config;
+
+import com.fitness.aiservice.service.ProcessingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+
+//Listener container for the batch processing modes (CONCURRENT, BATCHED_PROMPTS): whole polls are handed to
+//the listener as one batch and offsets are only committed when the listener acknowledges them
+@Configuration
+@ConditionalOnProcessingMode({ProcessingMode.CONCURRENT, ProcessingMode.BATCHED_PROMPTS})
+public class KafkaConsumerConfig {
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            @Value("${ai.processing.consumers:3}") int consumers) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        // same spring.kafka.* settings as the default factory
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        // one consumer thread per partition up to this many, more than the partition count just sit idle
+        factory.setConcurrency(consumers);
+        return factory;
+    }
+}
@@ -0,0 +1,30 @@
+package com.fitness.aiservice.config;
+
+import com.fitness.aiservice.service.ProcessingMode;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+//Conditions run before @ConfigurationProperties beans exist, so ProcessingProperties is bound here the same way.
+//An invalid mode throws a BindException and the context does not start
+class OnProcessingModeCondition extends SpringBootCondition {
+
+    @Override
+    public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        Map<String, Object> attributes = metadata.getAnnotationAttributes(ConditionalOnProcessingMode.class.getName());
+        List<ProcessingMode> modes = Arrays.asList((ProcessingMode[]) attributes.get("value"));
+        ProcessingMode mode = Binder.get(context.getEnvironment())
+                .bind("ai.processing", ProcessingProperties.class)
+                .orElseGet(ProcessingProperties::new)
+                .getMode();
+        return modes.contains(mode)
+                ? ConditionOutcome.match("ai.processing.mode is " + mode)
+                : ConditionOutcome.noMatch("ai.processing.mode is " + mode + ", not one of " + modes);
+    }
+}
@@ -0,0 +1,16 @@
+package com.fitness.aiservice.config;
+
+import com.fitness.aiservice.service.ProcessingMode;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+//ai.processing.* from ai-service.yml.
+//mode is bound to the enum so a typo fails the startup instead of leaving the service without any listener,
+//@ConditionalOnProcessingMode binds the same class to pick the listener beans
+@Component
+@ConfigurationProperties(prefix = "ai.processing")
+@Data
+public class ProcessingProperties {
+    private ProcessingMode mode = ProcessingMode.SEQUENTIAL;
+}
@@ -0,0 +1,73 @@
+package com.fitness.aiservice.config;
+
+import com.fitness.aiservice.model.Recommendation;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Creates the unique index on recommendations.activityId (one recommendation per activity).
+//Not declared with @Indexed because auto-index-creation would fail the startup on a database that already holds
+//duplicates from redelivered events. Instead the duplicates are removed first, keeping the oldest recommendation of
+//each activity (the one the user saw first), then the index is built. Runs once, later startups find the index and skip.
+//@PostConstruct so it is done before the Kafka listeners start writing
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RecommendationIndexes {
+
+    static final String ACTIVITY_ID_INDEX = "activityId_unique";
+
+    private final MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void createActivityIdIndex() {
+        IndexOperations indexOps = mongoTemplate.indexOps(Recommendation.class);
+        boolean exists = indexOps.getIndexInfo().stream()
+                .anyMatch(index -> index.isUnique() && index.isIndexForFields(List.of("activityId")));
+        if (exists) {
+            return;
+        }
+        int removed = removeDuplicates();
+        if (removed > 0) {
+            log.warn("Removed {} duplicate recommendations before creating the unique activityId index", removed);
+        }
+        indexOps.createIndex(new Index("activityId", Sort.Direction.ASC)
+                .named(ACTIVITY_ID_INDEX)
+                .unique()
+                .partial(PartialIndexFilter.of(Criteria.where("activityId").exists(true))));
+    }
+
+    private int removeDuplicates() {
+        Aggregation duplicates = Aggregation.newAggregation(
+                        Aggregation.match(Criteria.where("activityId").exists(true)),
+                        Aggregation.sort(Sort.Direction.ASC, "createdAt"),
+                        Aggregation.group("activityId").push("_id").as("ids").count().as("count"),
+                        Aggregation.match(Criteria.where("count").gt(1)))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        List<Object> toRemove = new ArrayList<>();
+        for (Document group : mongoTemplate.aggregate(duplicates, "recommendations", Document.class)) {
+            List<?> ids = group.getList("ids", Object.class);
+            toRemove.addAll(ids.subList(1, ids.size()));
+        }
+        if (toRemove.isEmpty()) {
+            return 0;
+        }
+        return (int) mongoTemplate.remove(new Query(Criteria.where("_id").in(toRemove)), Recommendation.class)
+                .getDeletedCount();
+    }
+}
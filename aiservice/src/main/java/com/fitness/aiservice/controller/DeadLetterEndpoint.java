@@ -0,0 +1,46 @@
+package com.fitness.aiservice.controller;
+
+import com.fitness.aiservice.model.FailedActivity;
+import com.fitness.aiservice.service.DeadLetterService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+//Activities that ended up in activity-events-dlt, and replaying them through activity-events once Gemini
+//(or whatever failed) works again. Replayed activities are processed like new ones, with the same retries.
+//On the actuator instead of /api so it is not reachable through the gateway:
+//GET /actuator/deadletters?limit= lists, POST /actuator/deadletters replays the pending ones,
+//POST /actuator/deadletters/{activityId} replays one
+@Component
+@Endpoint(id = "deadletters")
+@RequiredArgsConstructor
+public class DeadLetterEndpoint {
+
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final DeadLetterService deadLetterService;
+
+    //failures not replayed yet, oldest first
+    @ReadOperation
+    public List<FailedActivity> pending(@Nullable Integer limit) {
+        return deadLetterService.pending(limit != null ? limit : DEFAULT_LIMIT);
+    }
+
+    //replays up to limit pending failures, oldest first
+    @WriteOperation
+    public Map<String, Integer> replayPending(@Nullable Integer limit) {
+        return Map.of("replayed", deadLetterService.replayPending(limit != null ? limit : DEFAULT_LIMIT));
+    }
+
+    @WriteOperation
+    public void replay(@Selector String activityId) {
+        deadLetterService.replay(activityId);
+    }
+}
@@ -2,14 +2,21 @@ package com.fitness.aiservice.controller;
 
 import com.fitness.aiservice.model.Recommendation;
 import com.fitness.aiservice.service.RecommendationService;
+import com.fitness.aiservice.service.RecommendationVersionService;
+import com.fitness.fieldselection.FieldSelection;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
+import java.util.Set;
 
 @RestController
 
@@ -19,12 +26,34 @@ import java.util.List;
 @RequestMapping("/api/recommendations")
 public class RecommendationController {
     private final RecommendationService recommendationService;
+    private final RecommendationVersionService recommendationVersionService;
+
+    //what ?fields= accepts, and what ?view=summary returns
+    private static final Set<String> FIELDS = Set.of("id", "activityId", "type", "userId", "recommendation",
+            "improvements", "suggestions", "safety", "createdAt");
+    private static final Set<String> SUMMARY_FIELDS = Set.of("activityId", "type", "createdAt");
 
     //For a user there will be a lot of activities and if we want to fetch recommendations for all 
     // activities then use this endpt , since fetching all so return type is list ie List<Recommendation>  
+    // ?fields=type,recommendation or ?view=summary to only get those fields
+    // polled by the frontend: sends an ETag and answers If-None-Match with 304 when nothing new was saved for the user
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Recommendation>> getUserRecommendation(@PathVariable String userId) {
-        return ResponseEntity.ok(recommendationService.getUserRecommendation(userId));
+    public ResponseEntity<List<Recommendation>> getUserRecommendation(@PathVariable String userId,
+                                                                      @RequestParam(required = false) String fields,
+                                                                      @RequestParam(required = false) String view,
+                                                                      WebRequest webRequest) {
+        FieldSelection selection = FieldSelection.parse(fields, view, FIELDS, SUMMARY_FIELDS).applyToResponse(webRequest);
+        if (webRequest.checkNotModified(recommendationVersionService.etag(userId, selection))) {
+            return perUser(HttpStatus.NOT_MODIFIED).build();
+        }
+        return perUser(HttpStatus.OK).body(recommendationService.getUserRecommendation(userId, selection));
+    }
+
+    //the list depends on who asks: shared caches must not hand it to another user, browsers revalidate with the ETag
+    private static ResponseEntity.BodyBuilder perUser(HttpStatus status) {
+        return ResponseEntity.status(status)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .varyBy("X-User-ID", "Authorization");
     }
 
 
@@ -0,0 +1,27 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+//Persistent tier of RecommendationCache: the analysis JSON Gemini returned for a prompt, keyed by the prompt's
+//fingerprint. Entries expire after 30 days so analyses eventually follow changes of the model behind gemini.api.url
+@Document(collection = "recommendation_cache")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CachedAnalysis {
+    @Id
+    private String fingerprint;
+    private String analysis;
+
+    @Indexed(expireAfter = "30d")
+    private Instant createdAt;
+}
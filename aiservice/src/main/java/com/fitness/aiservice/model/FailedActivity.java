@@ -0,0 +1,34 @@
+package com.fitness.aiservice.model;
+
+import com.fitness.eventcontract.ActivityEvent;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+//An activity whose recommendation could not be generated after all retries (it reached activity-events-dlt).
+//Kept with the full event so it can be replayed onto activity-events, replayedAt is cleared when it fails again
+@Document(collection = "failed_activities")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FailedActivity {
+    @Id
+    private String activityId;
+    private String userId;
+    private ActivityEvent activity;
+    private String exceptionClass;
+    private String error;
+    //how often it ended up in the DLT, replays included
+    private int failures;
+
+    @Indexed
+    private Instant failedAt;
+    private Instant replayedAt;
+}
@@ -1,17 +1,23 @@
 package com.fitness.aiservice.model;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fitness.fieldselection.FieldSelection;
 import lombok.Builder;
 import lombok.Data;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Document(collection = "recommendations")
+//findByUserId (newest first), findByActivityId uses the unique activityId index created by RecommendationIndexes
+@CompoundIndex(name = "userId_createdAt", def = "{'userId': 1, 'createdAt': -1}")
 @Data
 @Builder
+@JsonFilter(FieldSelection.FILTER)   //fields left out by ?fields=/?view=summary are not serialized
 public class Recommendation {
     @Id
     private String id;
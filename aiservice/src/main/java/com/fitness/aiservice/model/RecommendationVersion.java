@@ -0,0 +1,18 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+//Per user counter bumped after every saved recommendation, the ETag of GET /api/recommendations/user/{userId} is derived from it
+@Document(collection = "recommendation_versions")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecommendationVersion {
+    @Id
+    private String userId;
+    private long version;
+}
@@ -2,27 +2,33 @@ package com.fitness.aiservice.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fitness.aiservice.model.Activity;
 import com.fitness.aiservice.model.Recommendation;
+import com.fitness.eventcontract.ActivityEvent;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 
 //Generates AI-based fitness recommendations from activity data.
 //Builds prompt for AI model
-//Calls GeminiService
+//Calls GeminiService (through GeminiCallScheduler, which keeps us within the quota)
 //Parses AI response
 //Converts it into Recommendation entity
-//Handles fallback logic if AI fails
+//Fails (throws) when the AI answer cannot be used, see the retry topics in ActivityMessageListener
 
 @Service
 @Slf4j
@@ -31,100 +37,179 @@ public class ActivityAIService {
 
     // Service responsible for communicating with Google Gemini API
     // This service sends prompts to Gemini and receives AI-generated responses
-    private final GeminiService geminiService;
+    // Calls are queued in GeminiCallScheduler, which keeps them within the Gemini quota and retries 429s
+    private final GeminiCallScheduler geminiCallScheduler;
+
+    // Jackson ObjectMapper used to parse JSON responses (thread safe, shared by all calls)
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Analyses already produced for identical prompts, consulted before every Gemini call
+    private final RecommendationCache recommendationCache;
 
     // Main method that is called when an activity event is consumed from Kafka
     // It generates AI recommendations for a given activity
-    public Recommendation generateRecommendation(Activity activity) {
+    public Recommendation generateRecommendation(ActivityEvent activity) {
 
         // Create a detailed prompt using activity data
         String prompt = createPromptForActivity(activity);
 
+        // Same type, duration, calories and metrics as an earlier activity, reuse that analysis
+        Optional<Recommendation> cached = fromCache(activity, prompt);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
         // Call Gemini API using GeminiService and get raw AI response (JSON as String)
-        String aiResponse = geminiService.getRecommendations(prompt);
+        String aiResponse = geminiCallScheduler.call(prompt, geminiCallScheduler.priorityOf(activity));
 
         // Log the raw AI response for debugging and visibility
         log.info("RESPONSE FROM AI {} ", aiResponse);
 
         // Process the AI response and convert it into Recommendation entity
-        return processAIResponse(activity, aiResponse);
+        return processAIResponse(activity, prompt, aiResponse);
+    }
+
+    // Non-blocking version of generateRecommendation for the CONCURRENT processing mode,
+    // no thread is held while Gemini is working on the answer. The cache (Mongo) is used on boundedElastic threads
+    public Mono<Recommendation> generateRecommendationAsync(ActivityEvent activity) {
+        String prompt = createPromptForActivity(activity);
+        return Mono.fromCallable(() -> fromCache(activity, prompt))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(cached -> cached.map(Mono::just).orElseGet(() ->
+                        geminiCallScheduler.submit(prompt, geminiCallScheduler.priorityOf(activity))
+                                .doOnNext(aiResponse -> log.info("RESPONSE FROM AI {} ", aiResponse))
+                                .publishOn(Schedulers.boundedElastic())
+                                .map(aiResponse -> processAIResponse(activity, prompt, aiResponse))));
+    }
+
+    // Several activities in one Gemini request (BATCHED_PROMPTS processing mode), so the long format instructions
+    // are sent once per batch instead of once per activity. Cached activities are left out of the batch, parsed
+    // entries are cached under the single activity prompt. Returns the recommendations by activityId, activities
+    // whose entry is missing or unparsable are not in it and should be requested alone with generateRecommendation
+    public Map<String, Recommendation> generateRecommendations(List<ActivityEvent> activities) {
+        Map<String, Recommendation> resolved = new HashMap<>();
+        List<ActivityEvent> uncached = new ArrayList<>();
+        for (ActivityEvent activity : activities) {
+            fromCache(activity, createPromptForActivity(activity)).ifPresentOrElse(
+                    recommendation -> resolved.put(activity.getId(), recommendation),
+                    () -> uncached.add(activity));
+        }
+
+        if (uncached.size() > 1) {
+            // live as soon as one of the activities is (LIVE sorts first)
+            GeminiCallScheduler.Priority priority = uncached.stream()
+                    .map(geminiCallScheduler::priorityOf)
+                    .min(Comparator.naturalOrder())
+                    .orElseThrow();
+            String aiResponse = geminiCallScheduler.call(createPromptForActivities(uncached), priority);
+            log.info("RESPONSE FROM AI for {} activities {} ", uncached.size(), aiResponse);
+            resolved.putAll(processBatchResponse(uncached, aiResponse));
+        }
+        return resolved;
     }
 
     // Processes the raw AI response string and converts it into Recommendation object
-    private Recommendation processAIResponse(Activity activity, String aiResponse) {
+    private Recommendation processAIResponse(ActivityEvent activity, String prompt, String aiResponse) {
         try { 
-            // Jackson ObjectMapper used to parse JSON responses
-            ObjectMapper mapper = new ObjectMapper();
-
-            // Parse the full Gemini API response JSON
-            JsonNode rootNode = mapper.readTree(aiResponse);
-
-            // Navigate through Gemini response structure to extract the text output
-            JsonNode textNode = rootNode.path("candidates")
-                    .get(0)
-                    .path("content")
-                    .get("parts")
-                    .get(0)
-                    .path("text");
-
-            // Gemini returns JSON wrapped inside markdown ```json blocks
-            // Remove those wrappers to extract clean JSON content
-            String jsonContent = textNode.asText()
-                    .replaceAll("```json\\n","")
-                    .replaceAll("\\n```","")
-                    .trim();
-
             // Parse the cleaned JSON content returned by Gemini
-            JsonNode analysisJson = mapper.readTree(jsonContent);
-
-            // Extract the "analysis" section from the AI response
-            JsonNode analysisNode = analysisJson.path("analysis");
-
-            // Build a single formatted string containing all analysis sections
-            StringBuilder fullAnalysis = new StringBuilder();
-            addAnalysisSection(fullAnalysis, analysisNode, "overall", "Overall:");
-            addAnalysisSection(fullAnalysis, analysisNode, "pace", "Pace:");
-            addAnalysisSection(fullAnalysis, analysisNode, "heartRate", "Heart Rate:");
-            addAnalysisSection(fullAnalysis, analysisNode, "caloriesBurned", "Calories:");
-
-            // Extract structured lists from AI response
-            List<String> improvements = extractImprovements(analysisJson.path("improvements"));
-            List<String> suggestions = extractSuggestions(analysisJson.path("suggestions"));
-            List<String> safety = extractSafetyGuidelines(analysisJson.path("safety"));
-
-            // Build and return Recommendation entity to be saved in DB
-            return Recommendation.builder()
-                    .activityId(activity.getId())
-                    .userId(activity.getUserId())
-                    .type(activity.getType().toString())
-                    .recommendation(fullAnalysis.toString().trim())
-                    .improvements(improvements)
-                    .suggestions(suggestions)
-                    .safety(safety)
-                    .createdAt(LocalDateTime.now())
-                    .build();
+            String jsonContent = extractText(aiResponse);
+            JsonNode analysisJson = MAPPER.readTree(jsonContent);
+            Recommendation recommendation = toRecommendation(activity, analysisJson);
+            if (analysisJson.path("analysis").isObject()) {
+                recommendationCache.put(prompt, jsonContent);
+            }
+            return recommendation;
+
+        } catch (Exception e) {
+            // No made up recommendation, the listener's retry topics try again and the DLT keeps it if that fails too
+            throw new RuntimeException("Could not parse AI response for activity " + activity.getId(), e);
+        }
+    }
+
+    // Splits the array of a batched answer back into recommendations by activityId.
+    // Only entries that parse are returned, a broken answer as a whole gives an empty map
+    private Map<String, Recommendation> processBatchResponse(List<ActivityEvent> activities, String aiResponse) {
+        Map<String, ActivityEvent> byId = new HashMap<>();
+        activities.forEach(activity -> byId.put(activity.getId(), activity));
 
+        Map<String, Recommendation> recommendations = new HashMap<>();
+        try {
+            JsonNode entries = MAPPER.readTree(extractText(aiResponse));
+            if (!entries.isArray()) {
+                return recommendations;
+            }
+            for (JsonNode entry : entries) {
+                ActivityEvent activity = byId.get(entry.path("activityId").asText(null));
+                if (activity != null && entry.path("analysis").isObject()
+                        && !recommendations.containsKey(activity.getId())) {
+                    recommendations.put(activity.getId(), toRecommendation(activity, entry));
+                    recommendationCache.put(createPromptForActivity(activity), entry.toString());
+                }
+            }
         } catch (Exception e) {
-            // If AI response parsing fails, return a default recommendation
-            e.printStackTrace();
-            return createDefaultRecommendation(activity);
+            log.warn("Could not parse batched AI response: {}", e.getMessage());
         }
+        return recommendations;
     }
 
-    // Fallback recommendation when AI response fails or is invalid
-    private Recommendation createDefaultRecommendation(Activity activity) {
+    // The recommendation built from a cached analysis of the same prompt, empty when there is none
+    private Optional<Recommendation> fromCache(ActivityEvent activity, String prompt) {
+        return recommendationCache.get(prompt).flatMap(analysis -> {
+            try {
+                return Optional.of(toRecommendation(activity, MAPPER.readTree(analysis)));
+            } catch (Exception e) {
+                return Optional.empty();
+            }
+        });
+    }
+
+    // Navigates the Gemini response structure to the text output, without the markdown wrapper around the JSON
+    private String extractText(String aiResponse) throws Exception {
+        // Parse the full Gemini API response JSON
+        JsonNode rootNode = MAPPER.readTree(aiResponse);
+
+        // Navigate through Gemini response structure to extract the text output
+        JsonNode textNode = rootNode.path("candidates")
+                .get(0)
+                .path("content")
+                .get("parts")
+                .get(0)
+                .path("text");
+
+        // Gemini returns JSON wrapped inside markdown ```json blocks
+        // Remove those wrappers to extract clean JSON content
+        return textNode.asText()
+                .replaceAll("```json\\n","")
+                .replaceAll("\\n```","")
+                .trim();
+    }
+
+    // Builds the Recommendation entity from one analysis object (the whole answer, or one entry of a batched answer)
+    private Recommendation toRecommendation(ActivityEvent activity, JsonNode analysisJson) {
+        // Extract the "analysis" section from the AI response
+        JsonNode analysisNode = analysisJson.path("analysis");
+
+        // Build a single formatted string containing all analysis sections
+        StringBuilder fullAnalysis = new StringBuilder();
+        addAnalysisSection(fullAnalysis, analysisNode, "overall", "Overall:");
+        addAnalysisSection(fullAnalysis, analysisNode, "pace", "Pace:");
+        addAnalysisSection(fullAnalysis, analysisNode, "heartRate", "Heart Rate:");
+        addAnalysisSection(fullAnalysis, analysisNode, "caloriesBurned", "Calories:");
+
+        // Extract structured lists from AI response
+        List<String> improvements = extractImprovements(analysisJson.path("improvements"));
+        List<String> suggestions = extractSuggestions(analysisJson.path("suggestions"));
+        List<String> safety = extractSafetyGuidelines(analysisJson.path("safety"));
+
+        // Build and return Recommendation entity to be saved in DB
         return Recommendation.builder()
                 .activityId(activity.getId())
                 .userId(activity.getUserId())
                 .type(activity.getType().toString())
-                .recommendation("Unable to generate detailed analysis")
-                .improvements(Collections.singletonList("Continue with your current routine"))
-                .suggestions(Collections.singletonList("Consider consulting a fitness consultant"))
-                .safety(Arrays.asList(
-                        "Always warm up before exercise",
-                        "Stay hydrated",
-                        "Listen to your body"
-                ))
+                .recommendation(fullAnalysis.toString().trim())
+                .improvements(improvements)
+                .suggestions(suggestions)
+                .safety(safety)
                 .createdAt(LocalDateTime.now())
                 .build();
     }
@@ -185,7 +270,7 @@ public class ActivityAIService {
 
     // Creates a structured prompt that is sent to Gemini AI
     // Forces Gemini to return output in a strict JSON format
-    private String createPromptForActivity(Activity activity) {
+    private String createPromptForActivity(ActivityEvent activity) {
         return String.format("""
         Analyze this fitness activity and provide detailed recommendations in the following EXACT JSON format:
         {
@@ -225,7 +310,72 @@ public class ActivityAIService {
                 activity.getType(),
                 activity.getDuration(),
                 activity.getCaloriesBurned(),
-                activity.getAdditionalMetrics()
+                sortedMetrics(activity)
         );
     }
+
+    // Prompt for several activities at once, asks for one analysis per activity keyed by its id
+    private String createPromptForActivities(List<ActivityEvent> activities) {
+        StringBuilder details = new StringBuilder();
+        for (ActivityEvent activity : activities) {
+            details.append(String.format("""
+                    Activity Id: %s
+                    Activity Type: %s
+                    Duration: %d minutes
+                    Calories Burned: %d
+                    Additional Metrics: %s
+
+                    """,
+                    activity.getId(),
+                    activity.getType(),
+                    activity.getDuration(),
+                    activity.getCaloriesBurned(),
+                    sortedMetrics(activity)));
+        }
+
+        return String.format("""
+        Analyze each of the following %d fitness activities separately and provide detailed recommendations
+        as a JSON array with exactly one element per activity, in the following EXACT JSON format:
+        [
+          {
+            "activityId": "Activity Id exactly as given",
+            "analysis": {
+              "overall": "Overall analysis here",
+              "pace": "Pace analysis here",
+              "heartRate": "Heart rate analysis here",
+              "caloriesBurned": "Calories analysis here"
+            },
+            "improvements": [
+              {
+                "area": "Area name",
+                "recommendation": "Detailed recommendation"
+              }
+            ],
+            "suggestions": [
+              {
+                "workout": "Workout name",
+                "description": "Detailed workout description"
+              }
+            ],
+            "safety": [
+              "Safety point 1",
+              "Safety point 2"
+            ]
+          }
+        ]
+
+        Analyze these activities:
+        %s
+        For every activity provide detailed analysis focusing on performance, improvements, next workout suggestions, and safety guidelines.
+        Ensure the response is only the JSON array in the EXACT format shown above.
+        """,
+                activities.size(),
+                details
+        );
+    }
+
+    // metrics in key order, so equal metrics always give the same prompt text (and cache fingerprint)
+    private static Map<String, Object> sortedMetrics(ActivityEvent activity) {
+        return activity.getAdditionalMetrics() == null ? null : new TreeMap<>(activity.getAdditionalMetrics());
+    }
 }
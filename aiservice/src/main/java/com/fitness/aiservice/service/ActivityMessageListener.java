@@ -1,18 +1,29 @@
 package com.fitness.aiservice.service;
 
-import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.config.ConditionalOnProcessingMode;
 import com.fitness.aiservice.model.Recommendation;
 import com.fitness.aiservice.respository.RecommendationRepository;
+import com.fitness.eventcontract.ActivityEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Service;
 
 //Acts as a Kafka consumer
 //Listens to activity events from Kafka and triggers AI processing.
+//Used with ai.processing.mode=SEQUENTIAL (the default), see ConcurrentActivityListener and BatchedPromptListener
+//for the batch modes
 
 @Service
+@ConditionalOnProcessingMode(ProcessingMode.SEQUENTIAL)
 @Slf4j
 @RequiredArgsConstructor
 public class ActivityMessageListener {
@@ -23,13 +34,29 @@ public class ActivityMessageListener {
     // Repository used to store generated recommendations in the AI service database
     private final RecommendationRepository recommendationRepository;
 
+    // Version counter behind the ETag of the user's recommendation list
+    private final RecommendationVersionService recommendationVersionService;
+
+    // Failures that used up all retries are kept here for replay
+    private final DeadLetterService deadLetterService;
+
     // Kafka listener that listens to activity events published by ActivityService
     // - topics is read from configuration
     // - groupId ensures this consumer belongs to a consumer group
+    // A failed activity is not retried in place (that would stall the partition) but forwarded to
+    // activity-events-retry-0, -1, ... whose consumers wait delay, delay * multiplier, ... before trying again,
+    // after ai.retry.attempts it lands in activity-events-dlt and handleDeadLetter below
+    @RetryableTopic(
+            attempts = "${ai.retry.attempts:4}",
+            backoff = @Backoff(delayExpression = "${ai.retry.delay:30000}",
+                    multiplierExpression = "${ai.retry.multiplier:4}",
+                    maxDelayExpression = "${ai.retry.max-delay:3600000}"),
+            topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+            dltTopicSuffix = "-dlt")
     @KafkaListener(topics = "${kafka.topic.name}", groupId = "activity-processor-group")
 
     // AiService receives activity data from kafka here as functn parameter
-    public void processActivity(Activity activity) {
+    public void processActivity(ActivityEvent activity) {
 
         log.info("Received Activity for processing: {}", activity.getUserId());
 
@@ -38,7 +65,20 @@ public class ActivityMessageListener {
                 activityAIService.generateRecommendation(activity);
 
         // Save the generated recommendation in the AI service database
-        recommendationRepository.save(recommendation);
+        try {
+            recommendationRepository.save(recommendation);
+        } catch (DuplicateKeyException e) {
+            // already recommended (a replayed activity that succeeded in the meantime)
+            return;
+        }
+        recommendationVersionService.bump(recommendation.getUserId());
     }
-}
 
+    // Last stop of an activity that failed every attempt, stored so it can be replayed later
+    @DltHandler
+    public void handleDeadLetter(ActivityEvent activity,
+                                 @Header(name = KafkaHeaders.EXCEPTION_FQCN, required = false) String exceptionClass,
+                                 @Header(name = KafkaHeaders.EXCEPTION_MESSAGE, required = false) String error) {
+        deadLetterService.record(activity, exceptionClass, error);
+    }
+}
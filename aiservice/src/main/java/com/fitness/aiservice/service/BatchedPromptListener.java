@@ -0,0 +1,100 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.ConditionalOnProcessingMode;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.respository.RecommendationRepository;
+import com.fitness.eventcontract.ActivityEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+//Kafka consumer for ai.processing.mode=BATCHED_PROMPTS.
+//Each poll is cut into chunks of up to prompt-batch-size activities in record order and every chunk becomes one
+//Gemini request (ActivityAIService.generateRecommendations). Chunks run one after the other and are saved in
+//record order, so the activities of one user keep their order. An activity that cannot be recommended goes to
+//activity-events-dlt (DeadLetterService) and the others carry on. The poll is acknowledged once everything is
+//saved or dead-lettered
+@Service
+@ConditionalOnProcessingMode(ProcessingMode.BATCHED_PROMPTS)
+@Slf4j
+@RequiredArgsConstructor
+public class BatchedPromptListener {
+
+    private final ActivityAIService activityAIService;
+    private final RecommendationRepository recommendationRepository;
+    private final RecommendationVersionService recommendationVersionService;
+    private final DeadLetterService deadLetterService;
+
+    @Value("${ai.processing.prompt-batch-size:10}")
+    private int promptBatchSize;
+
+    @KafkaListener(topics = "${kafka.topic.name}", groupId = "activity-processor-group",
+            containerFactory = "batchListenerContainerFactory")
+    public void processActivities(List<ConsumerRecord<String, ActivityEvent>> records, Acknowledgment acknowledgment) {
+        for (int from = 0; from < records.size(); from += promptBatchSize) {
+            List<ConsumerRecord<String, ActivityEvent>> chunk = records.subList(from, Math.min(records.size(), from + promptBatchSize));
+            try {
+                processChunk(chunk);
+            } catch (RuntimeException e) {
+                // only when dead-lettering itself failed: earlier chunks are saved, the error handler commits
+                // up to here and redelivers the rest
+                throw new BatchListenerFailedException("AI processing failed", e, chunk.getFirst());
+            }
+        }
+        acknowledgment.acknowledge();
+    }
+
+    private void processChunk(List<ConsumerRecord<String, ActivityEvent>> chunk) {
+        // activities saved by an earlier delivery of a partly failed poll are not sent again
+        List<ConsumerRecord<String, ActivityEvent>> pending = new ArrayList<>(chunk.size());
+        for (ConsumerRecord<String, ActivityEvent> record : chunk) {
+            if (!recommendationRepository.existsByActivityId(record.value().getId())) {
+                pending.add(record);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        log.info("Generating recommendations for {} activities in one prompt", pending.size());
+        Map<String, Recommendation> batched;
+        try {
+            batched = activityAIService.generateRecommendations(pending.stream().map(ConsumerRecord::value).toList());
+        } catch (RuntimeException e) {
+            // the scheduler already retried the call, Gemini is not answering: park the whole chunk
+            pending.forEach(record -> deadLetterService.deadLetter(record.key(), record.value(), e));
+            return;
+        }
+
+        for (ConsumerRecord<String, ActivityEvent> record : pending) {
+            ActivityEvent activity = record.value();
+            Recommendation recommendation = batched.get(activity.getId());
+            try {
+                if (recommendation == null) {
+                    log.warn("No usable analysis for activity {} in batched response, requesting it alone", activity.getId());
+                    recommendation = activityAIService.generateRecommendation(activity);
+                }
+            } catch (RuntimeException e) {
+                deadLetterService.deadLetter(record.key(), activity, e);
+                continue;
+            }
+            try {
+                recommendationRepository.save(recommendation);
+            } catch (DuplicateKeyException e) {
+                // saved by an earlier delivery in the meantime
+                continue;
+            }
+            recommendationVersionService.bump(recommendation.getUserId());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.ConditionalOnProcessingMode;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.respository.RecommendationRepository;
+import com.fitness.eventcontract.ActivityEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Kafka consumer for ai.processing.mode=CONCURRENT.
+//Each poll arrives as one batch, its records are grouped by key (the userId the activity service publishes with):
+//up to max-in-flight users are processed at the same time, the activities of one user strictly one after the
+//other in partition order. Gemini is called without blocking, only the Mongo writes use boundedElastic threads.
+//An activity that still fails after GeminiCallScheduler's retries goes to activity-events-dlt (DeadLetterService).
+//The batch is acknowledged once every activity is saved or dead-lettered, so throughput scales with max-in-flight
+//and the number of partitions/consumers instead of being one recommendation per Gemini round trip
+@Service
+@ConditionalOnProcessingMode(ProcessingMode.CONCURRENT)
+@Slf4j
+@RequiredArgsConstructor
+public class ConcurrentActivityListener {
+
+    private final ActivityAIService activityAIService;
+    private final RecommendationRepository recommendationRepository;
+    private final RecommendationVersionService recommendationVersionService;
+    private final DeadLetterService deadLetterService;
+
+    // Gemini calls in flight per consumer thread
+    @Value("${ai.processing.max-in-flight:16}")
+    private int maxInFlight;
+
+    @KafkaListener(topics = "${kafka.topic.name}", groupId = "activity-processor-group",
+            containerFactory = "batchListenerContainerFactory")
+    public void processActivities(List<ConsumerRecord<String, ActivityEvent>> records, Acknowledgment acknowledgment) {
+        // grouped up front instead of Flux.groupBy, which can stall when there are more groups than flatMap subscribes to
+        Map<String, List<Integer>> byUser = new LinkedHashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            byUser.computeIfAbsent(key(records.get(i)), user -> new ArrayList<>()).add(i);
+        }
+
+        // A failed activity goes to activity-events-dlt and the user's later activities carry on.
+        // Only when even that fails does the user's sequence stop, and the batch is redelivered from there
+        Map<Integer, Throwable> failures = new ConcurrentHashMap<>();
+        Flux.fromIterable(byUser.values())
+                .flatMap(indexes -> Flux.fromIterable(indexes)
+                        .concatMap(index -> process(records.get(index))
+                                .onErrorResume(e -> deadLetter(records.get(index), e))
+                                .doOnError(e -> failures.put(index, e)))
+                        .onErrorResume(e -> Mono.empty()), maxInFlight)
+                .then()
+                .block();
+
+        if (failures.isEmpty()) {
+            acknowledgment.acknowledge();
+            return;
+        }
+        // the error handler commits everything before the first failed record and redelivers the rest,
+        // records after it that were already saved are skipped by the existsByActivityId check
+        int first = failures.keySet().stream().mapToInt(Integer::intValue).min().getAsInt();
+        log.warn("{} of {} activities could not be dead-lettered, redelivering from offset {} of partition {}",
+                failures.size(), records.size(), records.get(first).offset(), records.get(first).partition());
+        throw new BatchListenerFailedException("AI processing failed", failures.get(first), records.get(first));
+    }
+
+    private Mono<Void> process(ConsumerRecord<String, ActivityEvent> record) {
+        ActivityEvent activity = record.value();
+        return Mono.fromCallable(() -> recommendationRepository.existsByActivityId(activity.getId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(exists -> exists
+                        ? Mono.<Recommendation>empty()
+                        : activityAIService.generateRecommendationAsync(activity))
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(this::save)
+                .then();
+    }
+
+    private Mono<Void> deadLetter(ConsumerRecord<String, ActivityEvent> record, Throwable error) {
+        return Mono.<Void>fromRunnable(() -> deadLetterService.deadLetter(record.key(), record.value(), error))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void save(Recommendation recommendation) {
+        try {
+            recommendationRepository.save(recommendation);
+        } catch (DuplicateKeyException e) {
+            // saved by an earlier delivery in the meantime, nothing changed for the user
+            return;
+        }
+        recommendationVersionService.bump(recommendation.getUserId());
+    }
+
+    private static String key(ConsumerRecord<String, ActivityEvent> record) {
+        return record.key() != null ? record.key() : record.value().getUserId();
+    }
+}
@@ -0,0 +1,101 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.FailedActivity;
+import com.fitness.eventcontract.ActivityEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Activities that could not get a recommendation: the DLT handler (SEQUENTIAL mode) and the batch listeners
+//record them in failed_activities, replay publishes them onto activity-events again once the cause is fixed
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DeadLetterService {
+
+    private final MongoTemplate mongoTemplate;
+    private final KafkaTemplate<String, ActivityEvent> kafkaTemplate;
+
+    @Value("${kafka.topic.name}")
+    private String topicName;
+
+    @Value("${ai.retry.send-timeout:10s}")
+    private Duration sendTimeout;
+
+    //stores (or updates) the failure of one activity
+    public void record(ActivityEvent activity, String exceptionClass, String error) {
+        log.error("No recommendation for activity {} of user {}: {}", activity.getId(), activity.getUserId(), error);
+        mongoTemplate.upsert(new Query(Criteria.where("activityId").is(activity.getId())),
+                new Update()
+                        .set("userId", activity.getUserId())
+                        .set("activity", activity)
+                        .set("exceptionClass", exceptionClass)
+                        .set("error", error)
+                        .set("failedAt", Instant.now())
+                        .unset("replayedAt")
+                        .inc("failures", 1),
+                FailedActivity.class);
+    }
+
+    //Batch modes: Spring Kafka has no retry topics for batch listeners and GeminiCallScheduler already retried
+    //the call, so a failed activity goes straight to the DLT instead of blocking its partition
+    public void deadLetter(String key, ActivityEvent activity, Throwable error) {
+        send(topicName + "-dlt", key, activity);
+        record(activity, error.getClass().getName(), error.getMessage());
+    }
+
+    //failures not replayed yet, oldest first
+    public List<FailedActivity> pending(int limit) {
+        return mongoTemplate.find(new Query(Criteria.where("replayedAt").is(null))
+                .with(Sort.by(Sort.Direction.ASC, "failedAt"))
+                .limit(Math.max(1, Math.min(limit, 1000))), FailedActivity.class);
+    }
+
+    //puts up to limit pending failures back onto activity-events, returns how many were sent
+    public int replayPending(int limit) {
+        List<FailedActivity> pending = pending(limit);
+        pending.forEach(this::replay);
+        return pending.size();
+    }
+
+    public void replay(String activityId) {
+        FailedActivity failed = mongoTemplate.findById(activityId, FailedActivity.class);
+        if (failed == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No failed activity: " + activityId);
+        }
+        replay(failed);
+    }
+
+    private void replay(FailedActivity failed) {
+        // marked only once Kafka has it, a failed send leaves it pending for the next replay
+        send(topicName, failed.getUserId(), failed.getActivity());
+        mongoTemplate.updateFirst(new Query(Criteria.where("activityId").is(failed.getActivityId())),
+                new Update().set("replayedAt", Instant.now()),
+                FailedActivity.class);
+    }
+
+    private void send(String topic, String key, ActivityEvent activity) {
+        try {
+            kafkaTemplate.send(topic, key, activity).get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sending activity " + activity.getId() + " to " + topic, e);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to send activity " + activity.getId() + " to " + topic, e);
+        }
+    }
+}
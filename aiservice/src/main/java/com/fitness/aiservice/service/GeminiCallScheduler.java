@@ -0,0 +1,431 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.aiservice.config.ProcessingProperties;
+import com.fitness.eventcontract.ActivityEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Every Gemini call goes through here instead of straight to GeminiService.
+//One dispatcher thread starts calls only while both per minute budgets (requests and estimated tokens) allow it,
+//LIVE calls (activities created within live-window) always go before BACKFILL ones (older events, replays).
+//A 429 pauses all dispatching for its Retry-After (or a jittered exponential back-off without one) and the call
+//is queued again at the front, timeouts and 5xx are retried the same way up to max-attempts.
+//In SEQUENTIAL mode timeouts and 5xx are not retried here, the listener's retry topics already retry the activity
+//with a longer back-off, and retrying in both places would make up to ai.retry.attempts x max-attempts Gemini calls.
+//The budgets are sliding 60s windows, so no minute ever carries more than the quota (a token bucket starting full
+//allowed up to twice the quota in the first minute and after every idle one).
+//A BACKFILL call that waited backfill-max-wait goes before LIVE ones so a steady LIVE load cannot starve it, and a call
+//that got no slot within max-wait fails with a TimeoutException instead of holding its listener past max.poll.interval.ms
+@Service
+@Slf4j
+public class GeminiCallScheduler {
+
+    public enum Priority {
+        LIVE,
+        BACKFILL
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final GeminiService geminiService;
+
+    private final Duration liveWindow;
+    private final long maxWait;
+    private final long backfillMaxWait;
+    private final int outputTokensEstimate;
+    private final int maxAttempts;
+    private final boolean retryFailures;
+    private final Duration baseBackoff;
+    private final Duration maxBackoff;
+
+    private final SlidingWindow requests;
+    private final SlidingWindow tokens;
+    private final Deque<PendingCall> live = new ArrayDeque<>();
+    private final Deque<PendingCall> backfill = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    //nothing is dispatched before this (System.nanoTime), set by 429s
+    private long pausedUntil = System.nanoTime();
+
+    private final Counter throttled;
+    private final Counter retried;
+    private final Counter expired;
+    private final Thread dispatcher;
+    private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("gemini-retry").daemon().factory());
+    private volatile boolean running = true;
+
+    public GeminiCallScheduler(GeminiService geminiService,
+                               MeterRegistry meterRegistry,
+                               ProcessingProperties processingProperties,
+                               @Value("${ai.gemini.requests-per-minute:60}") int requestsPerMinute,
+                               @Value("${ai.gemini.tokens-per-minute:1000000}") int tokensPerMinute,
+                               @Value("${ai.gemini.output-tokens-estimate:1000}") int outputTokensEstimate,
+                               @Value("${ai.gemini.live-window:15m}") Duration liveWindow,
+                               @Value("${ai.gemini.max-wait:4m}") Duration maxWait,
+                               @Value("${ai.gemini.backfill-max-wait:1m}") Duration backfillMaxWait,
+                               @Value("${ai.gemini.max-attempts:5}") int maxAttempts,
+                               @Value("${ai.gemini.base-backoff:1s}") Duration baseBackoff,
+                               @Value("${ai.gemini.max-backoff:60s}") Duration maxBackoff) {
+        this.geminiService = geminiService;
+        this.requests = new SlidingWindow(requestsPerMinute);
+        this.tokens = new SlidingWindow(tokensPerMinute);
+        this.outputTokensEstimate = outputTokensEstimate;
+        this.liveWindow = liveWindow;
+        this.maxWait = maxWait.toNanos();
+        this.backfillMaxWait = backfillMaxWait.toNanos();
+        this.maxAttempts = maxAttempts;
+        this.retryFailures = processingProperties.getMode() != ProcessingMode.SEQUENTIAL;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+
+        this.throttled = Counter.builder("ai.gemini.throttled")
+                .description("Gemini calls rejected with 429")
+                .register(meterRegistry);
+        this.retried = Counter.builder("ai.gemini.retries")
+                .description("Gemini calls queued again after a 429, timeout or 5xx")
+                .register(meterRegistry);
+        this.expired = Counter.builder("ai.gemini.expired")
+                .description("Gemini calls failed because they got no slot within max-wait")
+                .register(meterRegistry);
+        Gauge.builder("ai.gemini.queued", live, this::size).tag("priority", "live").register(meterRegistry);
+        Gauge.builder("ai.gemini.queued", backfill, this::size).tag("priority", "backfill").register(meterRegistry);
+
+        this.dispatcher = Thread.ofPlatform().name("gemini-dispatcher").daemon().start(this::run);
+    }
+
+    //LIVE for activities created within live-window, BACKFILL for older ones (catching up lag, replays)
+    public Priority priorityOf(ActivityEvent activity) {
+        LocalDateTime createdAt = activity.getCreatedAt();
+        return createdAt != null && createdAt.isAfter(LocalDateTime.now().minus(liveWindow)) ? Priority.LIVE : Priority.BACKFILL;
+    }
+
+    //raw Gemini response, blocks until the call got its turn and finished, at most about max-wait plus the call itself
+    public String call(String prompt, Priority priority) {
+        return submit(prompt, priority).block();
+    }
+
+    //raw Gemini response once the call got its turn and finished, retries included
+    public Mono<String> submit(String prompt, Priority priority) {
+        return Mono.defer(() -> {
+            long now = System.nanoTime();
+            PendingCall call = new PendingCall(prompt, priority, estimateTokens(prompt), new CompletableFuture<>(),
+                    0, now, now + maxWait);
+            enqueue(call, false);
+            return Mono.fromFuture(call.result());
+        });
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Started started = next();
+                if (started != null) {
+                    dispatch(started);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    //waits until a call may start under the pause and both budgets, then takes it from the queue
+    private Started next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                expire(live, now);
+                expire(backfill, now);
+                PendingCall call = head(now);
+                long wait = TimeUnit.MILLISECONDS.toNanos(500);
+                if (call != null) {
+                    wait = Math.max(pausedUntil - now,
+                            Math.max(requests.nanosUntil(1, now), tokens.nanosUntil(call.tokens(), now)));
+                    if (wait <= 0) {
+                        requests.take(1, now);
+                        Usage usage = tokens.take(call.tokens(), now);
+                        (call.priority() == Priority.LIVE ? live : backfill).pollFirst();
+                        return new Started(call, usage);
+                    }
+                }
+                //woken early by new calls (a LIVE one may overtake) and by pauses,
+                //capped so calls past their max-wait are failed without much delay
+                changed.awaitNanos(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(500)));
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //LIVE first, unless the oldest BACKFILL call has waited backfill-max-wait already
+    private PendingCall head(long now) {
+        PendingCall oldestBackfill = backfill.peekFirst();
+        if (oldestBackfill != null && now - oldestBackfill.queuedAt() >= backfillMaxWait) {
+            return oldestBackfill;
+        }
+        return !live.isEmpty() ? live.peekFirst() : oldestBackfill;
+    }
+
+    private void expire(Deque<PendingCall> queue, long now) {
+        queue.removeIf(call -> {
+            if (now - call.deadline() < 0) {
+                return false;
+            }
+            expired.increment();
+            call.result().completeExceptionally(new TimeoutException("No Gemini call slot within max-wait"));
+            return true;
+        });
+    }
+
+    private void dispatch(Started started) {
+        PendingCall call = started.call();
+        geminiService.getRecommendationsAsync(call.prompt()).subscribe(
+                response -> {
+                    correctTokens(started, response);
+                    call.result().complete(response);
+                },
+                error -> retryOrFail(call, error));
+    }
+
+    private void retryOrFail(PendingCall call, Throwable error) {
+        int attempt = call.attempt() + 1;
+        Duration delay = backoff(attempt);
+        //a retry that could only start after the deadline is not worth waiting for
+        if (!isRetryable(error) || attempt >= maxAttempts || (!retryFailures && !isThrottled(error))
+                || System.nanoTime() + delay.toNanos() - call.deadline() >= 0) {
+            call.result().completeExceptionally(error);
+            return;
+        }
+        retried.increment();
+        PendingCall again = call.nextAttempt();
+
+        if (isThrottled(error)) {
+            WebClientResponseException response = (WebClientResponseException) error;
+            throttled.increment();
+            // the quota is shared, so everything waits, and this call keeps its place at the front
+            Duration retryAfter = retryAfter(response);
+            Duration pause = retryAfter != null ? retryAfter.plus(jitter(baseBackoff)) : delay;
+            log.warn("Gemini returned 429, pausing calls for {} ms", pause.toMillis());
+            lock.lock();
+            try {
+                pausedUntil = Math.max(pausedUntil, System.nanoTime() + pause.toNanos());
+                (again.priority() == Priority.LIVE ? live : backfill).addFirst(again);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+        log.warn("Gemini call failed ({}), attempt {} of {}, retrying in {} ms", error.toString(), attempt, maxAttempts, delay.toMillis());
+        retries.schedule(() -> enqueue(again, true), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void enqueue(PendingCall call, boolean front) {
+        lock.lock();
+        try {
+            Deque<PendingCall> queue = call.priority() == Priority.LIVE ? live : backfill;
+            if (front) {
+                queue.addFirst(call);
+            } else {
+                queue.addLast(call);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //the estimate is charged up front and replaced by what Gemini reports as used afterwards
+    private void correctTokens(Started started, String response) {
+        try {
+            JsonNode used = MAPPER.readTree(response).path("usageMetadata").path("totalTokenCount");
+            if (used.isNumber()) {
+                lock.lock();
+                try {
+                    tokens.settle(started.tokens(), used.asInt(), System.nanoTime());
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (Exception e) {
+            // keep the estimate
+        }
+    }
+
+    private int estimateTokens(String prompt) {
+        //about 4 characters per token for English text
+        return prompt.length() / 4 + outputTokensEstimate;
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+        }
+        return error instanceof TimeoutException || error instanceof WebClientRequestException;
+    }
+
+    private static boolean isThrottled(Throwable error) {
+        return error instanceof WebClientResponseException response
+                && response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    //Retry-After as seconds or as an HTTP date, null when missing or unreadable
+    private static Duration retryAfter(WebClientResponseException response) {
+        String value = response.getHeaders().getFirst("Retry-After");
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (RuntimeException ignored) {
+                return null;
+            }
+        }
+    }
+
+    //exponential in the attempt, capped, with full jitter so retries of many calls do not line up
+    private Duration backoff(int attempt) {
+        long cap = Math.min(maxBackoff.toMillis(), baseBackoff.toMillis() << Math.min(attempt - 1, 20));
+        return jitter(Duration.ofMillis(cap));
+    }
+
+    private static Duration jitter(Duration upTo) {
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(upTo.toMillis() + 1));
+    }
+
+    private double size(Deque<PendingCall> queue) {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        dispatcher.interrupt();
+        retries.shutdownNow();
+        lock.lock();
+        try {
+            live.forEach(call -> call.result().completeExceptionally(new IllegalStateException("Shutting down")));
+            backfill.forEach(call -> call.result().completeExceptionally(new IllegalStateException("Shutting down")));
+            live.clear();
+            backfill.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //queuedAt is when the call was first submitted (BACKFILL aging), deadline is queuedAt + max-wait, both System.nanoTime
+    private record PendingCall(String prompt, Priority priority, int tokens, CompletableFuture<String> result,
+                               int attempt, long queuedAt, long deadline) {
+        PendingCall nextAttempt() {
+            return new PendingCall(prompt, priority, tokens, result, attempt + 1, queuedAt, deadline);
+        }
+    }
+
+    private record Started(PendingCall call, Usage tokens) {
+    }
+
+    private static final class Usage {
+        private final long at;
+        private double amount;
+
+        Usage(long at, double amount) {
+            this.at = at;
+            this.amount = amount;
+        }
+    }
+
+    //per minute budget over a sliding 60s window: whatever was taken within the last minute never exceeds the limit.
+    //Guarded by the scheduler's lock
+    private static final class SlidingWindow {
+        private static final long WINDOW = TimeUnit.MINUTES.toNanos(1);
+
+        private final double limit;
+        private final Deque<Usage> used = new ArrayDeque<>();
+        private double total;
+
+        SlidingWindow(int perMinute) {
+            this.limit = perMinute;
+        }
+
+        //0 when amount can be taken now, otherwise until enough of the oldest usage has left the window.
+        //More than the whole limit only waits for an empty window
+        long nanosUntil(double amount, long now) {
+            expire(now);
+            double excess = total + Math.min(amount, limit) - limit;
+            if (excess <= 0) {
+                return 0;
+            }
+            long until = 0;
+            for (Usage usage : used) {
+                excess -= usage.amount;
+                until = usage.at + WINDOW - now;
+                if (excess <= 0) {
+                    break;
+                }
+            }
+            return Math.max(1, until);
+        }
+
+        Usage take(double amount, long now) {
+            expire(now);
+            Usage usage = new Usage(now, amount);
+            used.addLast(usage);
+            total += amount;
+            return usage;
+        }
+
+        //replaces an estimate with the actual amount, may go above the limit, later calls then wait longer
+        void settle(Usage usage, double actual, long now) {
+            expire(now);
+            if (now - usage.at < WINDOW) {
+                total += actual - usage.amount;
+            }
+            usage.amount = actual;
+        }
+
+        private void expire(long now) {
+            while (!used.isEmpty() && now - used.peekFirst().at >= WINDOW) {
+                total -= used.pollFirst().amount;
+            }
+        }
+    }
+}
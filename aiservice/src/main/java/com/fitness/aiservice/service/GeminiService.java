@@ -3,7 +3,9 @@ package com.fitness.aiservice.service;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Map;
 
 //Handles communication with Google Gemini AI API.
@@ -22,6 +24,10 @@ public class GeminiService {
     @Value("${gemini.api.key}")
     private String geminiApiKey;
 
+    // Upper bound for one Gemini call, so a hung request cannot hold a listener (or a batch) forever
+    @Value("${gemini.api.timeout:60s}")
+    private Duration timeout;
+
     // Constructor injection of WebClient.Builder
     // Spring provides the builder bean and we build a WebClient from it
     public GeminiService(WebClient.Builder webClientBuilder) {
@@ -30,6 +36,14 @@ public class GeminiService {
 
     // This method sends activity details to Gemini AI and returns raw AI response
     public String getRecommendations(String details) {
+        // Block current thread until response is received
+        // (acceptable here because this runs asynchronously via Kafka)
+        return getRecommendationsAsync(details).block();
+    }
+
+    // Same request without blocking, the response arrives on a WebClient event loop thread.
+    // Used by the CONCURRENT processing mode so many calls can be in flight at once
+    public Mono<String> getRecommendationsAsync(String details) {
 
         //we saw in Postman ki after sending POST request the response was of this form
         // so creating structure accordingly so that we can get the required details from the res.
@@ -42,7 +56,7 @@ public class GeminiService {
         );
 
         // Send POST request to Gemini API
-        String response = webClient.post()
+        return webClient.post()
                 // Gemini endpoint
                 .uri(geminiApiUrl)
 
@@ -56,14 +70,8 @@ public class GeminiService {
                 // Execute request and retrieve response
                 .retrieve()
 
-                // Convert response body to String
+                // Convert response body to String (raw JSON response from Gemini AI)
                 .bodyToMono(String.class)
-
-                // Block current thread until response is received
-                // (acceptable here because this runs asynchronously via Kafka)
-                .block();
-
-        // Return raw JSON response from Gemini AI
-        return response;
+                .timeout(timeout);
     }
 }
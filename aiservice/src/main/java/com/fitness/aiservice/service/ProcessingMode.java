@@ -0,0 +1,13 @@
+package com.fitness.aiservice.service;
+
+//How activity-events are turned into recommendations, selected with ai.processing.mode
+public enum ProcessingMode {
+    //one activity at a time on the listener thread, blocking on Gemini (original behaviour)
+    SEQUENTIAL,
+    //batches of records, Gemini calls run in parallel across userIds and in order within one userId,
+    //offsets are committed only once every recommendation of the batch is saved (ConcurrentActivityListener)
+    CONCURRENT,
+    //batches of records, up to ai.processing.prompt-batch-size activities share one Gemini prompt
+    //(BatchedPromptListener), fewer requests and prompt tokens at the cost of a longer single call
+    BATCHED_PROMPTS
+}
@@ -0,0 +1,124 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.CachedAnalysis;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+//Analyses Gemini already produced, keyed by a fingerprint of the prompt, so activities with the same type, duration,
+//calories and metrics reuse one answer instead of paying for another call.
+//Bounded Caffeine cache (LRU-ish, TTL) in front of recommendation_cache in Mongo, the Mongo tier survives restarts
+//so a redeploy does not start cold. Only analyses that parsed are stored, a broken answer is never replayed
+@Service
+@Slf4j
+public class RecommendationCache {
+
+    private final MongoTemplate mongoTemplate;
+    private final Cache<String, String> hot;
+    private final String modelUrl;
+
+    private final Counter l1Hits;
+    private final Counter l2Hits;
+    private final Counter misses;
+    private final Counter savedCalls;
+
+    public RecommendationCache(MongoTemplate mongoTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${gemini.api.url}") String modelUrl,
+                               @Value("${ai.cache.hot-size:10000}") long hotSize,
+                               @Value("${ai.cache.hot-ttl:1h}") Duration hotTtl) {
+        this.mongoTemplate = mongoTemplate;
+        this.modelUrl = modelUrl;
+        this.hot = Caffeine.newBuilder()
+                .maximumSize(hotSize)
+                .expireAfterWrite(hotTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, hot, "recommendationCache");
+
+        this.l1Hits = lookups(meterRegistry, "memory");
+        this.l2Hits = lookups(meterRegistry, "mongo");
+        this.misses = lookups(meterRegistry, "miss");
+        this.savedCalls = Counter.builder("ai.recommendation.cache.saved-calls")
+                .description("Gemini calls answered from the recommendation cache instead")
+                .register(meterRegistry);
+        Gauge.builder("ai.recommendation.cache.hit-ratio", this, RecommendationCache::hitRatio)
+                .description("Share of lookups answered by either cache tier since startup")
+                .register(meterRegistry);
+    }
+
+    //the cached analysis JSON for this prompt, if any
+    public Optional<String> get(String prompt) {
+        String fingerprint = fingerprint(prompt);
+        String analysis = hot.getIfPresent(fingerprint);
+        if (analysis != null) {
+            l1Hits.increment();
+            savedCalls.increment();
+            return Optional.of(analysis);
+        }
+        try {
+            CachedAnalysis stored = mongoTemplate.findById(fingerprint, CachedAnalysis.class);
+            if (stored != null) {
+                hot.put(fingerprint, stored.getAnalysis());
+                l2Hits.increment();
+                savedCalls.increment();
+                return Optional.of(stored.getAnalysis());
+            }
+        } catch (RuntimeException e) {
+            // the cache is an optimisation, Gemini is still asked when Mongo cannot answer
+            log.warn("Recommendation cache lookup failed: {}", e.getMessage());
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public void put(String prompt, String analysis) {
+        String fingerprint = fingerprint(prompt);
+        hot.put(fingerprint, analysis);
+        try {
+            mongoTemplate.save(new CachedAnalysis(fingerprint, analysis, Instant.now()));
+        } catch (RuntimeException e) {
+            log.warn("Could not store analysis in recommendation cache: {}", e.getMessage());
+        }
+    }
+
+    //SHA-256 of the model URL and the prompt with whitespace collapsed, so indentation changes of the prompt
+    //template do not invalidate the cache but a different model does
+    private String fingerprint(String prompt) {
+        String normalized = modelUrl + "\n" + prompt.strip().replaceAll("\\s+", " ");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private double hitRatio() {
+        double hits = l1Hits.count() + l2Hits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ai.recommendation.cache.lookups")
+                .description("Recommendation cache lookups by the tier that answered")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
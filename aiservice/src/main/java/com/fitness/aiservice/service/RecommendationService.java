@@ -2,7 +2,11 @@ package com.fitness.aiservice.service;
 
 import com.fitness.aiservice.model.Recommendation;
 import com.fitness.aiservice.respository.RecommendationRepository;
+import com.fitness.fieldselection.FieldSelection;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -18,10 +22,15 @@ import java.util.List;
 
 public class RecommendationService {
     private final RecommendationRepository recommendationRepository;
+    private final MongoTemplate mongoTemplate;
     
     //Fetches all AI recommendations for a given user.
-    public List<Recommendation> getUserRecommendation(String userId) {
-        return recommendationRepository.findByUserId(userId);
+    //With a FieldSelection only those fields are read (list views do not need the long analysis texts)
+    public List<Recommendation> getUserRecommendation(String userId, FieldSelection selection) {
+        if (selection.includesAll()) {
+            return recommendationRepository.findByUserId(userId);
+        }
+        return mongoTemplate.find(selection.applyTo(new Query(Criteria.where("userId").is(userId))), Recommendation.class);
     }
 
     //Fetches the AI recommendation for a specific activity.
@@ -0,0 +1,34 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.RecommendationVersion;
+import com.fitness.fieldselection.FieldSelection;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+//Strong ETags for a user's recommendation list from a version counter, so If-None-Match is answered
+//with one _id lookup in recommendation_versions instead of reading the recommendations.
+//Bumped after the save and read before the list, so a tag is never newer than the data it was sent with
+@Service
+@RequiredArgsConstructor
+public class RecommendationVersionService {
+
+    private final MongoTemplate mongoTemplate;
+
+    public void bump(String userId) {
+        mongoTemplate.upsert(new Query(Criteria.where("userId").is(userId)),
+                new Update().inc("version", 1), RecommendationVersion.class);
+    }
+
+    public String etag(String userId, FieldSelection selection) {
+        RecommendationVersion version = mongoTemplate.findById(userId, RecommendationVersion.class);
+        long current = version == null ? 0 : version.getVersion();
+        //per user, so two users at the same version never share a tag
+        String user = Integer.toHexString(userId.hashCode());
+        String variant = selection.includesAll() ? "" : "-" + Integer.toHexString(selection.fields().hashCode());
+        return "\"" + user + "-" + current + variant + "\"";
+    }
+}
@@ -0,0 +1,103 @@
+package com.fitness.aiservice;
+
+import com.fitness.aiservice.config.RecommendationIndexes;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.respository.RecommendationRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Runs the recommendation queries against a throwaway Mongo and fails if the winning plan is a collection scan,
+//i.e. if the indexes declared on Recommendation (and created by RecommendationIndexes) stop matching the access patterns
+@DataMongoTest(properties = "spring.data.mongodb.auto-index-creation=true")
+@Testcontainers(disabledWithoutDocker = true)
+@Import(RecommendationIndexes.class)
+class RecommendationRepositoryIndexTests {
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+	@Autowired
+	private RecommendationRepository recommendationRepository;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private RecommendationIndexes recommendationIndexes;
+
+	@BeforeEach
+	void setUp() {
+		recommendationRepository.deleteAll();
+		for (int i = 0; i < 20; i++) {
+			recommendationRepository.save(Recommendation.builder()
+					.activityId("activity-" + i)
+					.userId("user-" + (i % 4))
+					.type("RUNNING")
+					.recommendation("Keep going")
+					.createdAt(LocalDateTime.now().minusDays(i))
+					.build());
+		}
+	}
+
+	@Test
+	void findByUserIdUsesIndex() {
+		assertThat(recommendationRepository.findByUserId("user-1")).isNotEmpty();
+
+		Document plan = winningPlan(new Document("userId", "user-1"));
+
+		assertThat(plan.toJson()).doesNotContain("COLLSCAN");
+	}
+
+	@Test
+	void findByActivityIdUsesIndex() {
+		assertThat(recommendationRepository.findByActivityId("activity-3")).isPresent();
+
+		Document plan = winningPlan(new Document("activityId", "activity-3"));
+
+		assertThat(plan.toJson()).doesNotContain("COLLSCAN");
+	}
+
+	@Test
+	void duplicatesAreRemovedBeforeTheUniqueIndexIsCreated() {
+		//a database from before the index, with redelivered events saved twice
+		mongoTemplate.indexOps(Recommendation.class).dropIndex("activityId_unique");
+		LocalDateTime first = LocalDateTime.now().minusDays(30);
+		for (int i = 0; i < 3; i++) {
+			mongoTemplate.insert(Recommendation.builder()
+					.activityId("activity-3")
+					.userId("user-3")
+					.recommendation("Copy " + i)
+					.createdAt(first.plusMinutes(i))
+					.build());
+		}
+
+		recommendationIndexes.createActivityIdIndex();
+
+		assertThat(recommendationRepository.findByActivityId("activity-3"))
+				.hasValueSatisfying(kept -> assertThat(kept.getRecommendation()).isEqualTo("Copy 0"));
+		assertThat(recommendationRepository.count()).isEqualTo(20);
+		assertThat(mongoTemplate.indexOps(Recommendation.class).getIndexInfo())
+				.anyMatch(index -> index.isUnique() && index.isIndexForFields(List.of("activityId")));
+	}
+
+	private Document winningPlan(Document filter) {
+		return mongoTemplate.getCollection("recommendations").find(filter).explain()
+				.get("queryPlanner", Document.class)
+				.get("winningPlan", Document.class);
+	}
+}
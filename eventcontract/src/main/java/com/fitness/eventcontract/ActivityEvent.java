@@ -1,35 +1,28 @@
-package com.fitness.aiservice.model;
+package com.fitness.eventcontract;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.springframework.data.annotation.CreatedDate;
-import org.springframework.data.annotation.LastModifiedDate;
-import org.springframework.data.mongodb.core.mapping.Document;
-import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
 import java.util.Map;
 
+//An activity as published by activityservice on the activity-events topic and consumed by aiservice.
+//Serialized with ActivityEventCodec, see there before adding or changing fields
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-public class Activity {
+public class ActivityEvent {
     private String id;
     private String userId;
     private ActivityType type;
     private Integer duration;
     private Integer caloriesBurned;
     private LocalDateTime startTime;
-
-    @Field("metrics")
+    //values may be null, booleans, numbers, strings, lists and maps of those (whatever the client sent as JSON)
     private Map<String, Object> additionalMetrics;
-
-    @CreatedDate
     private LocalDateTime createdAt;
-
-    @LastModifiedDate
     private LocalDateTime updatedAt;
 }
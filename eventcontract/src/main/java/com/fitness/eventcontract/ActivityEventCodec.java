@@ -0,0 +1,433 @@
+package com.fitness.eventcontract;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+//Compact binary format of ActivityEvent, replaces the JSON that used to go over the activity-events topic.
+//
+//Layout: magic byte 0xAE, format version byte, then the non null fields as (key, value) pairs in any order.
+//key = varint(fieldNumber << 3 | wireType), wireType 0 = varint, 1 = 8 bytes, 2 = varint length + bytes.
+//Numbers are zigzag varints, timestamps are epoch millis (UTC) as zigzag varints,
+//Mongo ObjectId ids travel as their 12 raw bytes and Keycloak UUID user ids as their 16 raw bytes.
+//
+//Schema evolution rules:
+//- new fields get a new field number, old readers skip fields they do not know (the wire type tells them how)
+//- a field number is never reused or given another wire type, removed fields just stop being written
+//- readers must cope with any field being absent (that is how null is written)
+//- the version byte only changes for changes old readers cannot skip, e.g. a new value kind inside metrics;
+//  a reader refuses versions newer than its own, so consumers have to be deployed before producers then
+public final class ActivityEventCodec {
+
+    public static final byte MAGIC = (byte) 0xAE;
+    public static final byte VERSION = 1;
+
+    //field numbers, see the rules above before touching these
+    static final int ID_OBJECT_ID = 1;
+    static final int ID_STRING = 2;
+    static final int USER_ID_UUID = 3;
+    static final int USER_ID_STRING = 4;
+    static final int TYPE = 5;
+    static final int DURATION = 6;
+    static final int CALORIES_BURNED = 7;
+    static final int START_TIME = 8;
+    static final int CREATED_AT = 9;
+    static final int UPDATED_AT = 10;
+    static final int METRICS = 11;
+
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_FIXED64 = 1;
+    static final int WIRE_BYTES = 2;
+
+    //value kinds inside METRICS, not skippable so adding one needs a new VERSION
+    private static final int KIND_NULL = 0;
+    private static final int KIND_FALSE = 1;
+    private static final int KIND_TRUE = 2;
+    private static final int KIND_INTEGER = 3;
+    private static final int KIND_DOUBLE = 4;
+    private static final int KIND_STRING = 5;
+    private static final int KIND_LIST = 6;
+    private static final int KIND_MAP = 7;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private ActivityEventCodec() {
+    }
+
+    public static byte[] encode(ActivityEvent event) {
+        Writer out = new Writer(128);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+
+        if (event.getId() != null) {
+            if (isObjectId(event.getId())) {
+                out.writeBytesField(ID_OBJECT_ID, HEX.parseHex(event.getId()));
+            } else {
+                out.writeBytesField(ID_STRING, utf8(event.getId()));
+            }
+        }
+        if (event.getUserId() != null) {
+            UUID uuid = asUuid(event.getUserId());
+            if (uuid != null) {
+                Writer bytes = new Writer(16);
+                bytes.writeLong(uuid.getMostSignificantBits());
+                bytes.writeLong(uuid.getLeastSignificantBits());
+                out.writeBytesField(USER_ID_UUID, bytes.toByteArray());
+            } else {
+                out.writeBytesField(USER_ID_STRING, utf8(event.getUserId()));
+            }
+        }
+        if (event.getType() != null) {
+            out.writeKey(TYPE, WIRE_VARINT);
+            out.writeVarint(event.getType().code());
+        }
+        writeSigned(out, DURATION, event.getDuration());
+        writeSigned(out, CALORIES_BURNED, event.getCaloriesBurned());
+        writeTime(out, START_TIME, event.getStartTime());
+        writeTime(out, CREATED_AT, event.getCreatedAt());
+        writeTime(out, UPDATED_AT, event.getUpdatedAt());
+        if (event.getAdditionalMetrics() != null) {
+            Writer metrics = new Writer(64);
+            writeMap(metrics, event.getAdditionalMetrics());
+            out.writeBytesField(METRICS, metrics.toByteArray());
+        }
+        return out.toByteArray();
+    }
+
+    public static ActivityEvent decode(byte[] data) {
+        if (data == null || data.length < 2 || data[0] != MAGIC) {
+            throw new IllegalArgumentException("Not an encoded ActivityEvent");
+        }
+        if (data[1] > VERSION || data[1] < 1) {
+            throw new IllegalArgumentException("Unsupported ActivityEvent format version " + data[1]);
+        }
+
+        Reader in = new Reader(data, 2, data.length);
+        ActivityEvent event = new ActivityEvent();
+        while (in.hasMore()) {
+            long key = in.readVarint();
+            int field = (int) (key >>> 3);
+            int wireType = (int) (key & 7);
+            switch (field) {
+                case ID_OBJECT_ID -> event.setId(HEX.formatHex(in.readBytes()));
+                case ID_STRING -> event.setId(in.readString());
+                case USER_ID_UUID -> {
+                    Reader uuid = in.readNested();
+                    event.setUserId(new UUID(uuid.readLong(), uuid.readLong()).toString());
+                }
+                case USER_ID_STRING -> event.setUserId(in.readString());
+                case TYPE -> event.setType(ActivityType.fromCode((int) in.readVarint()));
+                case DURATION -> event.setDuration((int) in.readSignedVarint());
+                case CALORIES_BURNED -> event.setCaloriesBurned((int) in.readSignedVarint());
+                case START_TIME -> event.setStartTime(toTime(in.readSignedVarint()));
+                case CREATED_AT -> event.setCreatedAt(toTime(in.readSignedVarint()));
+                case UPDATED_AT -> event.setUpdatedAt(toTime(in.readSignedVarint()));
+                case METRICS -> event.setAdditionalMetrics(readMap(in.readNested()));
+                default -> in.skip(wireType);   //written by a newer producer
+            }
+        }
+        return event;
+    }
+
+    private static void writeSigned(Writer out, int field, Integer value) {
+        if (value != null) {
+            out.writeKey(field, WIRE_VARINT);
+            out.writeSignedVarint(value);
+        }
+    }
+
+    private static void writeTime(Writer out, int field, LocalDateTime time) {
+        if (time != null) {
+            out.writeKey(field, WIRE_VARINT);
+            out.writeSignedVarint(time.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+    }
+
+    private static LocalDateTime toTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    private static void writeMap(Writer out, Map<?, ?> map) {
+        out.writeVarint(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            out.writeString(String.valueOf(entry.getKey()));
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static void writeValue(Writer out, Object value) {
+        switch (value) {
+            case null -> out.writeByte(KIND_NULL);
+            case Boolean bool -> out.writeByte(bool ? KIND_TRUE : KIND_FALSE);
+            case Integer number -> writeInteger(out, number);
+            case Long number -> writeInteger(out, number);
+            case Short number -> writeInteger(out, number);
+            case Byte number -> writeInteger(out, number);
+            case BigInteger number when number.bitLength() < 64 -> writeInteger(out, number.longValue());
+            case Number number when !(number instanceof BigInteger) -> {
+                out.writeByte(KIND_DOUBLE);
+                out.writeLong(Double.doubleToRawLongBits(number.doubleValue()));
+            }
+            case Map<?, ?> map -> {
+                out.writeByte(KIND_MAP);
+                writeMap(out, map);
+            }
+            case List<?> list -> {
+                out.writeByte(KIND_LIST);
+                out.writeVarint(list.size());
+                list.forEach(item -> writeValue(out, item));
+            }
+            case Object[] array -> writeValue(out, Arrays.asList(array));
+            //strings, and anything else as its string form (like huge BigIntegers)
+            default -> {
+                out.writeByte(KIND_STRING);
+                out.writeString(value.toString());
+            }
+        }
+    }
+
+    private static void writeInteger(Writer out, long value) {
+        out.writeByte(KIND_INTEGER);
+        out.writeSignedVarint(value);
+    }
+
+    private static Map<String, Object> readMap(Reader in) {
+        int size = in.readLength();
+        Map<String, Object> map = new LinkedHashMap<>(Math.max(4, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+            String key = in.readString();
+            map.put(key, readValue(in));
+        }
+        return map;
+    }
+
+    private static Object readValue(Reader in) {
+        int kind = in.readByte();
+        return switch (kind) {
+            case KIND_NULL -> null;
+            case KIND_FALSE -> Boolean.FALSE;
+            case KIND_TRUE -> Boolean.TRUE;
+            case KIND_INTEGER -> {
+                //same types Jackson would have produced for the JSON number
+                long value = in.readSignedVarint();
+                yield value == (int) value ? (Object) (int) value : (Object) value;
+            }
+            case KIND_DOUBLE -> Double.longBitsToDouble(in.readLong());
+            case KIND_STRING -> in.readString();
+            case KIND_LIST -> {
+                int size = in.readLength();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                yield list;
+            }
+            case KIND_MAP -> readMap(in);
+            default -> throw new IllegalArgumentException("Unknown metric value kind " + kind);
+        };
+    }
+
+    //only lowercase hex round trips exactly, anything else is sent as a plain string
+    private static boolean isObjectId(String id) {
+        if (id.length() != 24) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static UUID asUuid(String userId) {
+        if (userId.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(userId);
+            return uuid.toString().equals(userId) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //growable byte buffer, ByteArrayOutputStream synchronizes every write
+    static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        Writer(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeKey(int field, int wireType) {
+            writeVarint(((long) field << 3) | wireType);
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        //zigzag so small negative numbers stay small
+        void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeString(String value) {
+            writeBytes(utf8(value));
+        }
+
+        void writeBytesField(int field, byte[] bytes) {
+            writeKey(field, WIRE_BYTES);
+            writeBytes(bytes);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    static final class Reader {
+        private final byte[] data;
+        private int position;
+        private final int limit;
+
+        Reader(byte[] data, int offset, int limit) {
+            this.data = data;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        boolean hasMore() {
+            return position < limit;
+        }
+
+        int readByte() {
+            require(1);
+            return data[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readSignedVarint() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readLong() {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (data[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        int readLength() {
+            long length = readVarint();
+            if (length < 0 || length > limit - position) {
+                throw new IllegalArgumentException("Length " + length + " runs past the end of the event");
+            }
+            return (int) length;
+        }
+
+        byte[] readBytes() {
+            int length = readLength();
+            byte[] bytes = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        String readString() {
+            int length = readLength();
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        //reader over the next length delimited value, without copying it
+        Reader readNested() {
+            int length = readLength();
+            Reader nested = new Reader(data, position, position + length);
+            position += length;
+            return nested;
+        }
+
+        void skip(int wireType) {
+            switch (wireType) {
+                case WIRE_VARINT -> readVarint();
+                case WIRE_FIXED64 -> {
+                    require(8);
+                    position += 8;
+                }
+                case WIRE_BYTES -> {
+                    //the length has to be read first, it moves position past its varint
+                    int length = readLength();
+                    position += length;
+                }
+                default -> throw new IllegalArgumentException("Unknown wire type " + wireType);
+            }
+        }
+
+        private void require(int bytes) {
+            if (position + bytes > limit) {
+                throw new IllegalArgumentException("Truncated ActivityEvent");
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.fitness.eventcontract;
+
+//Activity types as they travel on the activity-events topic.
+//The binary codec writes the code, not the ordinal or the name, so constants can be reordered or renamed freely.
+//Rules: never change or reuse a code, new types get the next free one. Consumers that do not know a code yet read it as OTHER
+public enum ActivityType {
+    RUNNING(1),
+    WALKING(2),
+    CYCLING(3),
+    SWIMMING(4),
+    WEIGHT_TRAINING(5),
+    YOGA(6),
+    HIIT(7),
+    CARDIO(8),
+    STRETCHING(9),
+    OTHER(0);
+
+    private static final ActivityType[] BY_CODE = new ActivityType[16];
+
+    static {
+        for (ActivityType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final int code;
+
+    ActivityType(int code) {
+        this.code = code;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public static ActivityType fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length || BY_CODE[code] == null) {
+            return OTHER;
+        }
+        return BY_CODE[code];
+    }
+
+    //for mapping the services' own ActivityType enums, which share the constant names
+    public static ActivityType fromName(String name) {
+        for (ActivityType type : values()) {
+            if (type.name().equals(name)) {
+                return type;
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,22 @@
+package com.fitness.eventcontract.kafka;
+
+import com.fitness.eventcontract.ActivityEvent;
+import com.fitness.eventcontract.ActivityEventCodec;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+//value-deserializer for the activity-events topic (aiservice consumer)
+public class ActivityEventDeserializer implements Deserializer<ActivityEvent> {
+
+    @Override
+    public ActivityEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return ActivityEventCodec.decode(data);
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Cannot decode ActivityEvent from " + topic + ": " + e.getMessage(), e);
+        }
+    }
+}
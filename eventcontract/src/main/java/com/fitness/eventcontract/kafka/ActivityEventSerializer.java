@@ -0,0 +1,14 @@
+package com.fitness.eventcontract.kafka;
+
+import com.fitness.eventcontract.ActivityEvent;
+import com.fitness.eventcontract.ActivityEventCodec;
+import org.apache.kafka.common.serialization.Serializer;
+
+//value-serializer for the activity-events topic (activityservice producer)
+public class ActivityEventSerializer implements Serializer<ActivityEvent> {
+
+    @Override
+    public byte[] serialize(String topic, ActivityEvent event) {
+        return event == null ? null : ActivityEventCodec.encode(event);
+    }
+}
@@ -0,0 +1,86 @@
+package com.fitness.eventcontract;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+//Binary codec vs the JSON the topic used to carry (Jackson with JavaTimeModule, like spring-kafka's JsonSerializer).
+//Run with: mvn -Pbenchmark test-compile exec:exec
+//Prints the bytes per event of both formats first, then JMH reports ns per serialize/deserialize
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActivityEventCodecBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ActivityEvent event;
+    private byte[] binary;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws Exception {
+        objectMapper = jsonMapper();
+        event = ActivityEventCodecTests.sampleEvent();
+        binary = ActivityEventCodec.encode(event);
+        json = objectMapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] binarySerialize() {
+        return ActivityEventCodec.encode(event);
+    }
+
+    @Benchmark
+    public ActivityEvent binaryDeserialize() {
+        return ActivityEventCodec.decode(binary);
+    }
+
+    @Benchmark
+    public byte[] jsonSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public ActivityEvent jsonDeserialize() throws Exception {
+        return objectMapper.readValue(json, ActivityEvent.class);
+    }
+
+    private static ObjectMapper jsonMapper() {
+        return new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    public static void main(String[] args) throws Exception {
+        ActivityEvent event = ActivityEventCodecTests.sampleEvent();
+        int binaryBytes = ActivityEventCodec.encode(event).length;
+        int jsonBytes = jsonMapper().writeValueAsBytes(event).length;
+        System.out.printf("bytes per event: binary %d, json %d (%.0f%% smaller)%n",
+                binaryBytes, jsonBytes, 100.0 * (jsonBytes - binaryBytes) / jsonBytes);
+
+        event.setAdditionalMetrics(null);
+        System.out.printf("without metrics: binary %d, json %d%n",
+                ActivityEventCodec.encode(event).length, jsonMapper().writeValueAsBytes(event).length);
+
+        new Runner(new OptionsBuilder()
+                .include(ActivityEventCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.fitness.eventcontract;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ActivityEventCodecTests {
+
+    static ActivityEvent sampleEvent() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("avgHeartRate", 142);
+        metrics.put("distanceMeters", 10_250_000_000L);
+        metrics.put("avgPace", 5.25);
+        metrics.put("indoor", false);
+        metrics.put("device", "Forerunner 265");
+        metrics.put("laps", List.of(Map.of("km", 1, "seconds", 301), Map.of("km", 2, "seconds", 297)));
+        metrics.put("notes", null);
+        return ActivityEvent.builder()
+                .id("65f1c2a9e4b0a1b2c3d4e5f6")
+                .userId("3f2504e0-4f89-41d3-9a0c-0305e82c3301")
+                .type(ActivityType.RUNNING)
+                .duration(52)
+                .caloriesBurned(610)
+                .startTime(LocalDateTime.of(2025, 3, 1, 7, 30, 12, 123_000_000))
+                .additionalMetrics(metrics)
+                .createdAt(LocalDateTime.of(2025, 3, 1, 8, 25))
+                .updatedAt(LocalDateTime.of(2025, 3, 1, 8, 25))
+                .build();
+    }
+
+    @Test
+    void roundTripsEveryField() {
+        ActivityEvent event = sampleEvent();
+        assertEquals(event, ActivityEventCodec.decode(ActivityEventCodec.encode(event)));
+    }
+
+    @Test
+    void roundTripsIdsThatAreNotObjectIdsOrUuids() {
+        ActivityEvent event = sampleEvent();
+        event.setId("65F1C2A9E4B0A1B2C3D4E5F6");
+        event.setUserId("legacy-user-7");
+        assertEquals(event, ActivityEventCodec.decode(ActivityEventCodec.encode(event)));
+    }
+
+    @Test
+    void absentFieldsDecodeAsNull() {
+        ActivityEvent decoded = ActivityEventCodec.decode(ActivityEventCodec.encode(new ActivityEvent()));
+        assertEquals(new ActivityEvent(), decoded);
+        assertNull(decoded.getType());
+    }
+
+    @Test
+    void skipsFieldsFromNewerProducers() {
+        byte[] encoded = ActivityEventCodec.encode(sampleEvent());
+        //field 30 as varint 300 and field 31 as 2 bytes, neither is known to this reader
+        byte[] withUnknownFields = Arrays.copyOf(encoded, encoded.length + 9);
+        int i = encoded.length;
+        withUnknownFields[i++] = (byte) 0xF0;   //key 30 << 3 | 0
+        withUnknownFields[i++] = 0x01;
+        withUnknownFields[i++] = (byte) 0xAC;   //300
+        withUnknownFields[i++] = 0x02;
+        withUnknownFields[i++] = (byte) 0xFA;   //key 31 << 3 | 2
+        withUnknownFields[i++] = 0x01;
+        withUnknownFields[i++] = 0x02;          //length
+        withUnknownFields[i++] = 0x7F;
+        withUnknownFields[i] = 0x7F;
+
+        assertEquals(sampleEvent(), ActivityEventCodec.decode(withUnknownFields));
+    }
+
+    @Test
+    void unknownTypeCodeReadsAsOther() {
+        assertEquals(ActivityType.OTHER, ActivityType.fromCode(99));
+    }
+
+    @Test
+    void rejectsNewerVersionsAndForeignPayloads() {
+        byte[] encoded = ActivityEventCodec.encode(sampleEvent());
+        encoded[1] = ActivityEventCodec.VERSION + 1;
+        assertThrows(IllegalArgumentException.class, () -> ActivityEventCodec.decode(encoded));
+        assertThrows(IllegalArgumentException.class, () -> ActivityEventCodec.decode("{\"id\":\"1\"}".getBytes()));
+    }
+
+    @Test
+    void rejectsTruncatedEvents() {
+        byte[] encoded = ActivityEventCodec.encode(sampleEvent());
+        assertThrows(IllegalArgumentException.class,
+                () -> ActivityEventCodec.decode(Arrays.copyOf(encoded, encoded.length - 3)));
+    }
+}
@@ -0,0 +1,80 @@
+package com.fitness.fieldselection;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+//?fields=a,b and/or ?view=summary|full of a list read, applied to the Mongo query as a field projection
+//so fields nobody asked for are neither read nor serialized. fields == null means everything, id is always returned.
+//Response classes annotated @JsonFilter(FieldSelection.FILTER) are written with only the selected fields once the
+//selection is applied to the response (applyToResponse / filters), everywhere else they are written in full
+public record FieldSelection(Set<String> fields) {
+
+    public static final FieldSelection ALL = new FieldSelection(null);
+
+    public static final String FILTER = "fieldSelection";
+
+    static final String REQUEST_ATTRIBUTE = FieldSelection.class.getName();
+
+    public static FieldSelection parse(String fields, String view, Set<String> allowed, Set<String> summary) {
+        Set<String> selected = new LinkedHashSet<>();
+        if (view != null && !view.isBlank()) {
+            switch (view) {
+                case "summary" -> selected.addAll(summary);
+                case "full" -> {
+                    return ALL;
+                }
+                default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown view: " + view);
+            }
+        }
+        if (fields != null && !fields.isBlank()) {
+            for (String field : Arrays.stream(fields.split(",")).map(String::trim).filter(f -> !f.isEmpty()).toList()) {
+                if (!allowed.contains(field)) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field: " + field);
+                }
+                selected.add(field);
+            }
+        }
+        return selected.isEmpty() ? ALL : new FieldSelection(selected);
+    }
+
+    public boolean includesAll() {
+        return fields == null;
+    }
+
+    public boolean includes(String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    public Query applyTo(Query query) {
+        if (fields != null) {
+            fields.forEach(field -> query.fields().include(field));
+        }
+        return query;
+    }
+
+    //the response body of this request is written with filters() (FieldSelectionResponseBodyAdvice)
+    public FieldSelection applyToResponse(WebRequest request) {
+        request.setAttribute(REQUEST_ATTRIBUTE, this, RequestAttributes.SCOPE_REQUEST);
+        return this;
+    }
+
+    //for ObjectMapper.writer(...) when a response is written by hand (streams)
+    public FilterProvider filters() {
+        if (fields == null) {
+            return new SimpleFilterProvider().addFilter(FILTER, SimpleBeanPropertyFilter.serializeAll());
+        }
+        Set<String> written = new LinkedHashSet<>(fields);
+        written.add("id");
+        return new SimpleFilterProvider().addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(written));
+    }
+}
@@ -0,0 +1,26 @@
+package com.fitness.fieldselection;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+
+//Registered in META-INF/spring/org.springframework.boot.autoconfigure.AutoConfiguration.imports
+@AutoConfiguration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class FieldSelectionAutoConfiguration {
+
+    //@JsonFilter(FieldSelection.FILTER) classes are written in full unless a selection was applied to the response
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer fieldSelectionDefaultFilter() {
+        return builder -> builder.filters(new SimpleFilterProvider()
+                .setDefaultFilter(SimpleBeanPropertyFilter.serializeAll()));
+    }
+
+    @Bean
+    public FieldSelectionResponseBodyAdvice fieldSelectionResponseBodyAdvice() {
+        return new FieldSelectionResponseBodyAdvice();
+    }
+}
@@ -0,0 +1,77 @@
+package com.fitness.gateway;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+//Sits in front of the real (signature verifying) decoder and remembers tokens that were already verified,
+//so a client sending the same bearer token again does not pay for the RSA check every time.
+//Entries are keyed by the SHA-256 of the token (raw tokens are never kept) and drop out at the token's exp.
+//Tokens without exp are never cached.
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+
+    private final ReactiveJwtDecoder delegate;
+    private final Cache<String, Jwt> verifiedTokens;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, long maxSize, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Jwt>() {
+                    @Override
+                    public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+                        return Math.max(0, Duration.between(Instant.now(), jwt.getExpiresAt()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, jwt, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "verifiedTokens");
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) {
+        String key = hash(token);
+        Jwt cached = verifiedTokens.getIfPresent(key);
+        //expired entries are cleaned up lazily so double check exp before trusting the entry
+        if (cached != null && cached.getExpiresAt().isAfter(Instant.now())) {
+            return Mono.just(cached);
+        }
+        return delegate.decode(token)
+                .doOnNext(jwt -> {
+                    if (jwt.getExpiresAt() != null) {
+                        verifiedTokens.put(key, jwt);
+                    }
+                });
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,80 +1,83 @@
 package com.fitness.gateway;
 
 import com.fitness.gateway.user.RegisterRequest;
+import com.fitness.gateway.user.SyncedUserCache;
 import com.fitness.gateway.user.UserService;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
-import java.text.ParseException;
+import java.util.Optional;
 
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class KeycloakUserSyncFilter implements WebFilter {
-    
+
     private final UserService userService;
-    
+    private final SyncedUserCache syncedUserCache;
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        //the security filter chain has already decoded and verified the bearer token,
+        //so take the claims from the authenticated principal instead of parsing the header again
+        return exchange.getPrincipal()
+                .ofType(JwtAuthenticationToken.class)
+                .map(authentication -> Optional.of(authentication.getToken()))
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(jwt -> jwt
+                        .map(token -> syncUser(exchange, chain, token))
+                        .orElseGet(() -> chain.filter(exchange)));
+    }
+
+    private Mono<Void> syncUser(ServerWebExchange exchange, WebFilterChain chain, Jwt jwt) {
         String userId = exchange.getRequest().getHeaders().getFirst("X-User-ID");
-        String token = exchange.getRequest().getHeaders().getFirst("Authorization");
-        RegisterRequest registerRequest = getUserDetails(token);
         if (userId == null) {
-            userId = registerRequest.getKeycloakId();
+            userId = jwt.getSubject();
         }
 
-        if (userId != null && token != null) {
+        if (userId != null) {
             String finalUserId = userId;
-            return userService.validateUser(userId)
-                    .flatMap(exist -> {
-                        if (!exist) {
-                            if (registerRequest != null) {
-                                return userService.registerUser(registerRequest)
-                                        .then(Mono.empty());
-                            } else {
-                                return Mono.empty();
-                            }
-                        } else {
-                            log.info("User already exist, Skipping sync");
-                            return Mono.empty();
+            //already validated/registered recently so no need to call USER-SERVICE again
+            if (syncedUserCache.isSynced(finalUserId)) {
+                return chain.filter(withUserId(exchange, finalUserId));
+            }
+            //concurrent requests of the same user share a single validate/register call
+            return userService.syncUser(finalUserId, getUserDetails(jwt))
+                    .doOnNext(synced -> {
+                        if (synced) {
+                            syncedUserCache.markSynced(finalUserId);
                         }
                     })
-                    .then(Mono.defer(() -> {
-                        ServerHttpRequest mutatedRequest = exchange.getRequest().mutate()
-                                .header("X-User-ID", finalUserId)
-                                .build();
-                        return chain.filter(exchange.mutate().request(mutatedRequest).build());
-                    }));
+                    .then(Mono.defer(() -> chain.filter(withUserId(exchange, finalUserId))));
         }
 
         return chain.filter(exchange);
     }
 
-    //extract userDetails from token like sub(which was keyCloakId as we saw on jwt.io website) , etc
-    private RegisterRequest getUserDetails(String token) {
-        try {
-            String tokenWithoutBearer = token.replace("Bearer", "").trim();
-            SignedJWT signedJWT = SignedJWT.parse(tokenWithoutBearer);
-            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+    private ServerWebExchange withUserId(ServerWebExchange exchange, String userId) {
+        ServerHttpRequest mutatedRequest = exchange.getRequest().mutate()
+                .header("X-User-ID", userId)
+                .build();
+        return exchange.mutate().request(mutatedRequest).build();
+    }
 
-            RegisterRequest request = new RegisterRequest();
-            request.setEmail(claims.getStringClaim("email"));
-            request.setKeycloakId(claims.getStringClaim("sub"));
-            request.setFirstName(claims.getStringClaim("given_name"));
-            request.setLastName(claims.getStringClaim("family_name"));
-            request.setPassword("dummy@123123");
+    //extract userDetails from token like sub(which was keyCloakId as we saw on jwt.io website) , etc
+    private RegisterRequest getUserDetails(Jwt jwt) {
+        RegisterRequest request = new RegisterRequest();
+        request.setEmail(jwt.getClaimAsString("email"));
+        request.setKeycloakId(jwt.getSubject());
+        request.setFirstName(jwt.getClaimAsString("given_name"));
+        request.setLastName(jwt.getClaimAsString("family_name"));
+        request.setPassword("dummy@123123");
 
-            return request;
-        } catch (ParseException e) {
-            throw new RuntimeException(e);
-        }
+        return request;
     }
 }
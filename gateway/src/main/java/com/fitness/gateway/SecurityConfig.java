@@ -1,10 +1,14 @@
 package com.fitness.gateway;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.reactive.CorsConfigurationSource;
@@ -26,6 +30,15 @@ public class SecurityConfig {
                 .build();
     }
 
+    //same decoder Spring Boot would build from jwk-set-uri, wrapped so already verified tokens skip the RSA check
+    @Bean
+    public ReactiveJwtDecoder jwtDecoder(@Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri}") String jwkSetUri,
+                                         @Value("${gateway.jwt-cache.max-size:50000}") long maxSize,
+                                         MeterRegistry meterRegistry) {
+        ReactiveJwtDecoder verifyingDecoder = NimbusReactiveJwtDecoder.withJwkSetUri(jwkSetUri).build();
+        return new CachingReactiveJwtDecoder(verifyingDecoder, maxSize, meterRegistry);
+    }
+
     //code to resolve CORS error        
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
@@ -0,0 +1,40 @@
+package com.fitness.gateway.ratelimit;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+//gateway.rate-limit.* from gateway-service.yml
+//routes is keyed by the route id of spring.cloud.gateway routes, routes without an entry are not limited.
+//Validated at startup, a zero capacity or refill would make every request wait forever
+@Component
+@ConfigurationProperties(prefix = "gateway.rate-limit")
+@Validated
+@Data
+public class RateLimitProperties {
+    private boolean enabled = true;
+
+    //buckets of users that did not send anything for this long are dropped to keep memory bounded
+    @NotNull
+    private Duration idleEviction = Duration.ofMinutes(10);
+
+    private Map<String, @Valid Limit> routes = new HashMap<>();
+
+    @Data
+    public static class Limit {
+        //max requests a user can burst on the route
+        @Positive
+        private long capacity;
+        //sustained requests per second a user gets on the route
+        @Positive
+        private double refillPerSecond;
+    }
+}
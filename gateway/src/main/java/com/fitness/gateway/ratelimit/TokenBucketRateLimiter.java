@@ -0,0 +1,96 @@
+package com.fitness.gateway.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+//In-memory token bucket per key (userId) for one route.
+//Buckets are guarded by a fixed set of striped locks instead of one lock per bucket or a global lock,
+//and the hot path does not allocate once the bucket of a user exists.
+public class TokenBucketRateLimiter {
+
+    private static final int STRIPES = 64;
+
+    private final long capacity;
+    private final double tokensPerNano;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[STRIPES];
+    private final Function<String, Bucket> newBucket;
+    private final LongSupplier nanoClock;
+
+    public TokenBucketRateLimiter(long capacity, double refillPerSecond) {
+        this(capacity, refillPerSecond, System::nanoTime);
+    }
+
+    //clock in nanos like System.nanoTime, tests pass their own
+    TokenBucketRateLimiter(long capacity, double refillPerSecond, LongSupplier nanoClock) {
+        if (capacity <= 0 || !(refillPerSecond > 0)) {
+            throw new IllegalArgumentException("capacity and refillPerSecond must be positive");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = refillPerSecond / 1_000_000_000d;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.nanoClock = nanoClock;
+        this.newBucket = key -> new Bucket(capacity, nanoClock.getAsLong());
+    }
+
+    //Takes one token for the key.
+    //Returns 0 when the request is allowed, otherwise the nanos until a token becomes available
+    public long tryAcquire(String key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, newBucket);
+        }
+        long now = nanoClock.getAsLong();
+        synchronized (lockFor(key)) {
+            refill(bucket, now);
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - bucket.tokens) / tokensPerNano);
+        }
+    }
+
+    //drops buckets not touched for idleNanos, with idleNanos >= capacity / refill rate a dropped bucket
+    //would have been full again anyway so the user does not notice
+    public void evictIdle(long idleNanos) {
+        long now = nanoClock.getAsLong();
+        buckets.forEach((key, bucket) -> {
+            synchronized (lockFor(key)) {
+                if (now - bucket.lastRefill > idleNanos) {
+                    buckets.remove(key, bucket);
+                }
+            }
+        });
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    private void refill(Bucket bucket, long now) {
+        long elapsed = now - bucket.lastRefill;
+        if (elapsed > 0) {
+            bucket.tokens = Math.min(capacity, bucket.tokens + elapsed * tokensPerNano);
+            bucket.lastRefill = now;
+        }
+    }
+
+    private Object lockFor(String key) {
+        int hash = key.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long lastRefill;
+
+        private Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+    }
+}
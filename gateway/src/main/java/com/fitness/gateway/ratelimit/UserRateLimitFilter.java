@@ -0,0 +1,98 @@
+package com.fitness.gateway.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//Per user token bucket limiting on the gateway routes.
+//Users are identified by the sub claim of their (already verified) JWT,
+//requests over the limit get 429 with Retry-After instead of reaching the services.
+//A WebFilter ordered after the security chain (-100) and before KeycloakUserSyncFilter (unordered, so last),
+//so a rejected request costs neither a user sync nor routing/load balancing
+@Component
+@Slf4j
+public class UserRateLimitFilter implements WebFilter, Ordered {
+
+    private static final int ORDER = 0;
+
+    private final RateLimitProperties properties;
+    private final RouteLocator routeLocator;
+    private final Map<String, TokenBucketRateLimiter> limiters = new HashMap<>();
+
+    public UserRateLimitFilter(RateLimitProperties properties, RouteLocator routeLocator) {
+        this.properties = properties;
+        this.routeLocator = routeLocator;
+        properties.getRoutes().forEach((routeId, limit) ->
+                limiters.put(routeId, new TokenBucketRateLimiter(limit.getCapacity(), limit.getRefillPerSecond())));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!properties.isEnabled() || limiters.isEmpty()) {
+            return chain.filter(exchange);
+        }
+        //keyed on the sub of the verified token, X-User-ID can be sent by the client and would give
+        //a fresh bucket per made up value
+        return exchange.getPrincipal()
+                .ofType(JwtAuthenticationToken.class)
+                .mapNotNull(authentication -> authentication.getToken().getSubject())
+                .flatMap(userId -> routeOf(exchange).mapNotNull(route -> waitNanos(route, userId)))
+                .defaultIfEmpty(0L)
+                .flatMap(waitNanos -> waitNanos == 0 ? chain.filter(exchange) : reject(exchange, waitNanos));
+    }
+
+    //the route the request will go to, looked up the way RoutePredicateHandlerMapping does it
+    //because that only runs after the WebFilters
+    private Mono<Route> routeOf(ServerWebExchange exchange) {
+        return routeLocator.getRoutes()
+                .concatMap(route -> Mono.just(route).filterWhen(candidate -> candidate.getPredicate().apply(exchange)))
+                .next();
+    }
+
+    //null when the route is not limited, 0 when the request is allowed
+    private Long waitNanos(Route route, String userId) {
+        TokenBucketRateLimiter limiter = limiters.get(route.getId());
+        if (limiter == null) {
+            return null;
+        }
+        long waitNanos = limiter.tryAcquire(userId);
+        if (waitNanos > 0) {
+            log.warn("Rate limit exceeded for user {} on route {}", userId, route.getId());
+        }
+        return waitNanos;
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, long waitNanos) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        //Retry-After is in whole seconds, round up so the client never retries too early
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L)));
+        return response.setComplete();
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.rate-limit.eviction-interval:60s}")
+    public void evictIdleBuckets() {
+        long idleNanos = properties.getIdleEviction().toNanos();
+        limiters.values().forEach(limiter -> limiter.evictIdle(idleNanos));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
@@ -0,0 +1,39 @@
+package com.fitness.gateway.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+//Remembers keycloak ids (sub) that USER-SERVICE already knows about so the sync filter
+//can skip the validate/register round trip for them.
+//Bounded by size and expires entries after a TTL so a user deleted in USER-SERVICE is re-synced eventually.
+//Hit/miss/eviction counters are published as cache.* metrics with tag cache=syncedUsers (see /actuator/metrics)
+@Component
+public class SyncedUserCache {
+
+    private final Cache<String, Boolean> syncedUsers;
+
+    public SyncedUserCache(@Value("${gateway.user-cache.max-size:100000}") long maxSize,
+                           @Value("${gateway.user-cache.ttl:10m}") Duration ttl,
+                           MeterRegistry meterRegistry) {
+        this.syncedUsers = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, syncedUsers, "syncedUsers");
+    }
+
+    public boolean isSynced(String keycloakId) {
+        return syncedUsers.getIfPresent(keycloakId) != null;
+    }
+
+    public void markSynced(String keycloakId) {
+        syncedUsers.put(keycloakId, Boolean.TRUE);
+    }
+}
@@ -8,13 +8,43 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class UserService {
     private final WebClient userServiceWebClient;
- 
+    private final Optional<UserValidationBatcher> validationBatcher;
+
+    //validate/register pipelines currently running, keyed by keycloak id, so that concurrent
+    //requests of a freshly logged in user share one call to USER-SERVICE instead of racing each other
+    private final Map<String, Mono<Boolean>> inFlightSyncs = new ConcurrentHashMap<>();
+
+    //Makes sure the user exists in USER-SERVICE, registering it when it does not.
+    //Emits true once the user is known to exist, false if it is missing and could not be registered
+    public Mono<Boolean> syncUser(String userId, RegisterRequest registerRequest) {
+        return inFlightSyncs.computeIfAbsent(userId, id -> validateUser(id)
+                .flatMap(exist -> {
+                    if (exist) {
+                        log.info("User already exist, Skipping sync");
+                        return Mono.just(true);
+                    }
+                    if (registerRequest == null) {
+                        return Mono.just(false);
+                    }
+                    return registerUser(registerRequest).thenReturn(true);
+                })
+                .doFinally(signal -> inFlightSyncs.remove(id))
+                .cache());
+    }
+
     public Mono<Boolean> validateUser(String userId) {
+        if (validationBatcher.isPresent()) {
+            return validationBatcher.get().validate(userId);
+        }
         log.info("Calling User Service for {}", userId);
             return userServiceWebClient.get()
                     .uri("/api/users/{userId}/validate", userId)
@@ -0,0 +1,88 @@
+package com.fitness.gateway.user;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+//Collects validate calls for a few milliseconds (or until max-size ids are waiting) and sends them
+//to USER-SERVICE as one POST /api/users/validate:batch instead of one GET per user.
+//Only created when gateway.user-validation.batch.enabled=true, otherwise UserService calls /validate directly
+@Component
+@ConditionalOnProperty(name = "gateway.user-validation.batch.enabled", havingValue = "true")
+@Slf4j
+public class UserValidationBatcher {
+
+    private static final ParameterizedTypeReference<Map<String, Boolean>> VALIDATION_RESULT =
+            new ParameterizedTypeReference<>() {};
+
+    private final WebClient userServiceWebClient;
+    private final Sinks.Many<PendingValidation> pending = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable flusher;
+
+    public UserValidationBatcher(WebClient userServiceWebClient,
+                                 @Value("${gateway.user-validation.batch.max-size:100}") int maxSize,
+                                 @Value("${gateway.user-validation.batch.linger:5ms}") Duration linger,
+                                 @Value("${gateway.user-validation.batch.max-concurrent:4}") int maxConcurrent) {
+        this.userServiceWebClient = userServiceWebClient;
+        //at most maxConcurrent batch calls to USER-SERVICE at once, further batches wait for one to finish
+        this.flusher = pending.asFlux()
+                .bufferTimeout(maxSize, linger)
+                .flatMap(this::flush, maxConcurrent)
+                .subscribe();
+    }
+
+    public Mono<Boolean> validate(String userId) {
+        return Mono.defer(() -> {
+            Sinks.One<Boolean> result = Sinks.one();
+            //Many event loop threads emit concurrently. Emissions are serialized with the lock (held only for
+            //the enqueue) instead of spin-retrying on FAIL_NON_SERIALIZED, which would busy wait on the event loop
+            Sinks.EmitResult emitted;
+            synchronized (pending) {
+                emitted = pending.tryEmitNext(new PendingValidation(userId, result));
+            }
+            if (emitted.isFailure()) {
+                return Mono.error(new RuntimeException("Unexpected error : " + userId));
+            }
+            return result.asMono();
+        });
+    }
+
+    private Mono<Void> flush(List<PendingValidation> batch) {
+        List<String> userIds = batch.stream()
+                .map(PendingValidation::userId)
+                .distinct()
+                .toList();
+        log.info("Calling User Service batch validation for {} users", userIds.size());
+        return userServiceWebClient.post()
+                .uri("/api/users/validate:batch")
+                .bodyValue(userIds)
+                .retrieve()
+                .bodyToMono(VALIDATION_RESULT)
+                .defaultIfEmpty(Map.of())
+                .doOnNext(result -> batch.forEach(validation ->
+                        validation.result().tryEmitValue(result.getOrDefault(validation.userId(), false))))
+                .doOnError(e -> batch.forEach(validation ->
+                        validation.result().tryEmitError(new RuntimeException("Unexpected error : " + validation.userId()))))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.dispose();
+    }
+
+    private record PendingValidation(String userId, Sinks.One<Boolean> result) {
+    }
+}
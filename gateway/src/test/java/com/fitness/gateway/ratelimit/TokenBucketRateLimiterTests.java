@@ -0,0 +1,83 @@
+package com.fitness.gateway.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenBucketRateLimiterTests {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	void allowsBurstUpToCapacityThenTellsHowLongToWait() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(3, 2, clock::get);
+
+		assertThat(limiter.tryAcquire("user")).isZero();
+		assertThat(limiter.tryAcquire("user")).isZero();
+		assertThat(limiter.tryAcquire("user")).isZero();
+		//one token at 2 per second is 500 ms away
+		assertThat(limiter.tryAcquire("user")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+	}
+
+	@Test
+	void refillsAtTheConfiguredRate() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(3, 2, clock::get);
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire("user");
+		}
+
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(250));
+		assertThat(limiter.tryAcquire("user")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(250));
+
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(750));
+		assertThat(limiter.tryAcquire("user")).isZero();
+		assertThat(limiter.tryAcquire("user")).isZero();
+		assertThat(limiter.tryAcquire("user")).isPositive();
+	}
+
+	@Test
+	void refillStopsAtCapacity() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(3, 2, clock::get);
+		limiter.tryAcquire("user");
+
+		clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+		for (int i = 0; i < 3; i++) {
+			assertThat(limiter.tryAcquire("user")).isZero();
+		}
+		assertThat(limiter.tryAcquire("user")).isPositive();
+	}
+
+	@Test
+	void bucketsArePerUser() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(2, 1, clock::get);
+		limiter.tryAcquire("alice");
+		limiter.tryAcquire("alice");
+		assertThat(limiter.tryAcquire("alice")).isPositive();
+
+		assertThat(limiter.tryAcquire("bob")).isZero();
+		assertThat(limiter.tryAcquire("bob")).isZero();
+		assertThat(limiter.tryAcquire("bob")).isPositive();
+	}
+
+	@Test
+	void evictsOnlyIdleBuckets() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(2, 1, clock::get);
+		limiter.tryAcquire("idle");
+		clock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+		limiter.tryAcquire("active");
+
+		limiter.evictIdle(TimeUnit.MINUTES.toNanos(5));
+
+		assertThat(limiter.size()).isEqualTo(1);
+	}
+
+	@Test
+	void rejectsNonPositiveSettings() {
+		assertThatThrownBy(() -> new TokenBucketRateLimiter(0, 1)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new TokenBucketRateLimiter(1, 0)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,111 @@
+package com.fitness.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Latency bookkeeping per service instance, shared by every load balancer client of this application.
+//Each instance keeps a time weighted EWMA of its response times plus the number of requests in flight,
+//score = ewma * (inFlight + 1) and lower is better.
+//The ewma fades while an instance gets no traffic so an instance that was slow once is tried again later.
+public class InstanceLatencyStats {
+
+    private final ConcurrentHashMap<String, InstanceStats> stats = new ConcurrentHashMap<>();
+    private final long decayNanos;
+    private final long failurePenaltyNanos;
+
+    public InstanceLatencyStats(Duration decay, Duration failurePenalty) {
+        this.decayNanos = decay.toNanos();
+        this.failurePenaltyNanos = failurePenalty.toNanos();
+    }
+
+    //instances without any data score 0 so new instances get probed right away
+    public double score(ServiceInstance instance) {
+        InstanceStats instanceStats = stats.get(key(instance));
+        return instanceStats == null ? 0 : instanceStats.score(System.nanoTime());
+    }
+
+    public void onStart(ServiceInstance instance) {
+        statsFor(instance).inFlight.incrementAndGet();
+    }
+
+    public void onComplete(ServiceInstance instance, long latencyNanos, boolean failed) {
+        InstanceStats instanceStats = statsFor(instance);
+        //clamped, the entry may have been pruned and recreated while the request was in flight
+        instanceStats.inFlight.updateAndGet(inFlight -> Math.max(0, inFlight - 1));
+        instanceStats.record(failed ? Math.max(latencyNanos, failurePenaltyNanos) : latencyNanos, failed, System.nanoTime());
+    }
+
+    public Map<String, InstanceScore> snapshot() {
+        long now = System.nanoTime();
+        Map<String, InstanceScore> snapshot = new TreeMap<>();
+        stats.forEach((key, instanceStats) -> snapshot.put(key, instanceStats.toScore(now)));
+        return snapshot;
+    }
+
+    //Drops the stats of serviceId's instances that are not in current anymore (scaled down, redeployed with a new id),
+    //otherwise every instance ever seen stays in the map. Instances with requests in flight are kept until those complete
+    public void retainOnly(String serviceId, List<ServiceInstance> current) {
+        Set<String> keep = new HashSet<>();
+        current.forEach(instance -> keep.add(key(instance)));
+        String prefix = serviceId + "/";
+        stats.entrySet().removeIf(entry -> entry.getKey().regionMatches(true, 0, prefix, 0, prefix.length())
+                && !keep.contains(entry.getKey())
+                && entry.getValue().inFlight.get() == 0);
+    }
+
+    private InstanceStats statsFor(ServiceInstance instance) {
+        return stats.computeIfAbsent(key(instance), key -> new InstanceStats());
+    }
+
+    private static String key(ServiceInstance instance) {
+        String instanceId = instance.getInstanceId() != null
+                ? instance.getInstanceId()
+                : instance.getHost() + ":" + instance.getPort();
+        return instance.getServiceId() + "/" + instanceId;
+    }
+
+    public record InstanceScore(double ewmaMillis, int inFlight, double score, long requests, long failures) {
+    }
+
+    private final class InstanceStats {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private double ewmaNanos;
+        private long lastUpdate = System.nanoTime();
+        private long requests;
+        private long failures;
+
+        private synchronized void record(long latencyNanos, boolean failed, long now) {
+            if (requests == 0) {
+                ewmaNanos = latencyNanos;
+            } else {
+                double weight = Math.exp(-(double) (now - lastUpdate) / decayNanos);
+                ewmaNanos = ewmaNanos * weight + latencyNanos * (1 - weight);
+            }
+            lastUpdate = now;
+            requests++;
+            if (failed) {
+                failures++;
+            }
+        }
+
+        private synchronized double decayedEwma(long now) {
+            return ewmaNanos * Math.exp(-(double) (now - lastUpdate) / decayNanos);
+        }
+
+        private double score(long now) {
+            return decayedEwma(now) * (inFlight.get() + 1);
+        }
+
+        private synchronized InstanceScore toScore(long now) {
+            return new InstanceScore(decayedEwma(now) / 1_000_000d, inFlight.get(), score(now), requests, failures);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.fitness.loadbalancer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Power of two choices: pick two random instances and send the request to the one with the lower
+//latency score. Avoids a slow (GC pausing) instance without herding all traffic onto the single best one
+@Slf4j
+public class LatencyAwareLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    //stats of departed instances are pruned at most this often, not on every request
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+    private final String serviceId;
+    private final InstanceLatencyStats latencyStats;
+    private volatile long lastPruned = System.nanoTime();
+
+    public LatencyAwareLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+                                    String serviceId,
+                                    InstanceLatencyStats latencyStats) {
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.serviceId = serviceId;
+        this.latencyStats = latencyStats;
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+                .getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier.get(request)
+                .next()
+                .map(instances -> processInstanceResponse(supplier, instances));
+    }
+
+    private Response<ServiceInstance> processInstanceResponse(ServiceInstanceListSupplier supplier,
+                                                              List<ServiceInstance> instances) {
+        Response<ServiceInstance> response = getInstanceResponse(instances);
+        if (supplier instanceof SelectedInstanceCallback callback && response.hasServer()) {
+            callback.selectedServiceInstance(response.getServer());
+        }
+        return response;
+    }
+
+    private Response<ServiceInstance> getInstanceResponse(List<ServiceInstance> instances) {
+        long now = System.nanoTime();
+        //an empty list is more likely a discovery hiccup than every instance being gone, keep the stats then
+        if (!instances.isEmpty() && now - lastPruned > PRUNE_INTERVAL_NANOS) {
+            lastPruned = now;
+            latencyStats.retainOnly(serviceId, instances);
+        }
+        if (instances.isEmpty()) {
+            log.warn("No servers available for service: {}", serviceId);
+            return new EmptyResponse();
+        }
+        if (instances.size() == 1) {
+            return new DefaultResponse(instances.get(0));
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(instances.size());
+        int second = random.nextInt(instances.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceInstance a = instances.get(first);
+        ServiceInstance b = instances.get(second);
+        return new DefaultResponse(latencyStats.score(a) <= latencyStats.score(b) ? a : b);
+    }
+}
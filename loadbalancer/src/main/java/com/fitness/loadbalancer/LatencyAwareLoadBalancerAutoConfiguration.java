@@ -0,0 +1,34 @@
+package com.fitness.loadbalancer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Duration;
+
+//Every load balanced client of an application with this module on the classpath (lb:// gateway routes,
+//@LoadBalanced WebClients) uses the latency aware balancer instead of the default round robin one.
+//Registered in META-INF/spring/org.springframework.boot.autoconfigure.AutoConfiguration.imports
+@AutoConfiguration
+@LoadBalancerClients(defaultConfiguration = LatencyAwareLoadBalancerConfiguration.class)
+public class LatencyAwareLoadBalancerAutoConfiguration {
+
+    @Bean
+    public InstanceLatencyStats instanceLatencyStats(@Value("${loadbalancer.latency.decay:10s}") Duration decay,
+                                                     @Value("${loadbalancer.latency.failure-penalty:1s}") Duration failurePenalty) {
+        return new InstanceLatencyStats(decay, failurePenalty);
+    }
+
+    @Bean
+    public LatencyTrackingLifecycle latencyTrackingLifecycle(InstanceLatencyStats latencyStats) {
+        return new LatencyTrackingLifecycle(latencyStats);
+    }
+
+    @Bean
+    @ConditionalOnAvailableEndpoint
+    public LoadBalancerScoresEndpoint loadBalancerScoresEndpoint(InstanceLatencyStats latencyStats) {
+        return new LoadBalancerScoresEndpoint(latencyStats);
+    }
+}
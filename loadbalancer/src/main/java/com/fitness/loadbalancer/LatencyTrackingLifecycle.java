@@ -0,0 +1,54 @@
+package com.fitness.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.client.loadbalancer.TimedRequestContext;
+
+//Feeds InstanceLatencyStats from the load balancer lifecycle callbacks.
+//lb:// gateway routes and @LoadBalanced WebClients call these around every request
+public class LatencyTrackingLifecycle implements LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+
+    private final InstanceLatencyStats latencyStats;
+
+    public LatencyTrackingLifecycle(InstanceLatencyStats latencyStats) {
+        this.latencyStats = latencyStats;
+    }
+
+    @Override
+    public void onStart(Request<Object> request) {
+    }
+
+    @Override
+    public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+        if (request.getContext() instanceof TimedRequestContext context) {
+            context.setRequestStartTime(System.nanoTime());
+        }
+        if (lbResponse.hasServer()) {
+            latencyStats.onStart(lbResponse.getServer());
+        }
+    }
+
+    @Override
+    public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+        //DISCARD means no instance was chosen, so onStartRequest never ran for it
+        if (completionContext.status() == CompletionContext.Status.DISCARD
+                || completionContext.getLoadBalancerResponse() == null
+                || !completionContext.getLoadBalancerResponse().hasServer()) {
+            return;
+        }
+        long latencyNanos = 0;
+        if (completionContext.getLoadBalancerRequest().getContext() instanceof TimedRequestContext context
+                && context.getRequestStartTime() > 0) {
+            latencyNanos = System.nanoTime() - context.getRequestStartTime();
+        }
+        boolean failed = completionContext.status() == CompletionContext.Status.FAILED
+                || (completionContext.getClientResponse() instanceof ResponseData response
+                && response.getHttpStatus() != null
+                && response.getHttpStatus().is5xxServerError());
+        latencyStats.onComplete(completionContext.getLoadBalancerResponse().getServer(), latencyNanos, failed);
+    }
+}
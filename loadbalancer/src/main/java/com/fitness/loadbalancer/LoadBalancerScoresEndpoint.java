@@ -0,0 +1,23 @@
+package com.fitness.loadbalancer;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.Map;
+
+//GET /actuator/loadbalancer shows the current ewma, in flight count and score of every instance
+//so we can see why traffic moved away from an instance
+@Endpoint(id = "loadbalancer")
+public class LoadBalancerScoresEndpoint {
+
+    private final InstanceLatencyStats latencyStats;
+
+    public LoadBalancerScoresEndpoint(InstanceLatencyStats latencyStats) {
+        this.latencyStats = latencyStats;
+    }
+
+    @ReadOperation
+    public Map<String, InstanceLatencyStats.InstanceScore> scores() {
+        return latencyStats.snapshot();
+    }
+}
@@ -2,8 +2,13 @@ package com.fitness.userservice;
 
 import com.fitness.userservice.models.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface UserRepository extends JpaRepository<User, String> {
     Boolean existsByEmail(String email);  
@@ -13,5 +18,9 @@ public interface UserRepository extends JpaRepository<User, String> {
 
     Boolean existsByKeycloakId(String userId);
 
+    //one IN (...) query for a whole batch of ids, only the ids that exist come back
+    @Query("select u.keycloakId from User u where u.keycloakId in :keycloakIds")
+    List<String> findExistingKeycloakIds(@Param("keycloakIds") Collection<String> keycloakIds);
+
     User findByEmail(String email);
 }
@@ -0,0 +1,20 @@
+package com.fitness.userservice.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+public class KafkaConfig {
+
+    //compacted and keyed by keycloakId so a consumer reading from the beginning gets every user once
+    @Bean
+    public NewTopic userEventsTopic(@Value("${kafka.topic.user-events}") String topicName) {
+        return TopicBuilder.name(topicName)
+                .partitions(3)
+                .compact()
+                .build();
+    }
+}
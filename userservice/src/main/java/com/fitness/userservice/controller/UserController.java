@@ -8,6 +8,9 @@ import lombok.AllArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/users")
 
@@ -37,5 +40,11 @@ public class UserController {
     public ResponseEntity<Boolean> validateUser(@PathVariable String userId) {
         return ResponseEntity.ok(userService.existByUserId(userId));
     }
+
+    //same as above but for many userIds at once (used by the gateway to batch its validate calls)
+    @PostMapping("/validate:batch")
+    public ResponseEntity<Map<String, Boolean>> validateUsers(@RequestBody List<String> userIds) {
+        return ResponseEntity.ok(userService.existByUserIds(userIds));
+    }
 }
  
\ No newline at end of file
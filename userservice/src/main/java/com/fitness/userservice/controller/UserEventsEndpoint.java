@@ -0,0 +1,25 @@
+package com.fitness.userservice.controller;
+
+import com.fitness.userservice.services.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+//Backfill of user-events, on the actuator instead of /api so it is not reachable through the gateway.
+//POST /actuator/userevents publishes every existing user, run once so the replicas of other services
+//(activityservice's UserExistenceReplica) also know the users registered before the topic existed
+@Component
+@Endpoint(id = "userevents")
+@RequiredArgsConstructor
+public class UserEventsEndpoint {
+
+    private final UserService userService;
+
+    @WriteOperation
+    public Map<String, Integer> publishAll() {
+        return Map.of("published", userService.publishAllUsers());
+    }
+}
@@ -0,0 +1,15 @@
+package com.fitness.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Published on the user-events topic whenever register() creates a new user,
+//other services (activityservice) keep a local copy of which keycloakIds exist from these
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserCreatedEvent {
+    private String id;
+    private String keycloakId;
+}
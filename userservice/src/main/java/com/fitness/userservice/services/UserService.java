@@ -2,18 +2,40 @@ package com.fitness.userservice.services;
 
 import com.fitness.userservice.UserRepository;
 import com.fitness.userservice.dto.RegisterRequest;
+import com.fitness.userservice.dto.UserCreatedEvent;
 import com.fitness.userservice.dto.UserResponse;
 import com.fitness.userservice.models.User;
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service       //helps identify UserService as a service to the springFramework, and creates a bean of this service on startup
-@AllArgsConstructor
+@RequiredArgsConstructor
 @Slf4j
 public class UserService {
 
     private final UserRepository repository; //created before writing register() logic as first need a way to talk to the database.
+    private final KafkaTemplate<String, UserCreatedEvent> kafkaTemplate;
+
+    @Value("${kafka.topic.user-events}")
+    private String userEventsTopic;
+
+    //most ids accepted by one validate:batch call, keeps the IN (...) of the query bounded
+    @Value("${user.validation.max-batch-size:500}")
+    private int maxValidationBatchSize;
 
 
     //Method to register the user
@@ -42,6 +64,14 @@ public class UserService {
         user.setPassword(request.getPassword());
         //saving the new user in repository ie the db
         User savedUser = repository.save(user);
+
+        //Let other services know this user exists so they don't have to call /validate for it
+        try {
+            kafkaTemplate.send(userEventsTopic, savedUser.getKeycloakId(),
+                    new UserCreatedEvent(savedUser.getId(), savedUser.getKeycloakId()));
+        } catch (Exception e) {
+            log.error("Failed to publish user created event for {}", savedUser.getKeycloakId(), e);
+        }
         // Creating UserResponse DTO to send safe data back to client
         UserResponse userResponse = new UserResponse();
         userResponse.setId(savedUser.getId());
@@ -55,6 +85,27 @@ public class UserService {
         return userResponse;
     }
 
+    //Publishes a UserCreatedEvent for every existing user, for users registered before user-events existed.
+    //The topic is compacted by keycloakId, so running it again only replaces each user's record
+    public int publishAllUsers() {
+        int published = 0;
+        Slice<User> page = repository.findAll(PageRequest.of(0, 1000, Sort.by("id")));
+        while (true) {
+            for (User user : page) {
+                if (user.getKeycloakId() != null) {
+                    kafkaTemplate.send(userEventsTopic, user.getKeycloakId(), new UserCreatedEvent(user.getId(), user.getKeycloakId()));
+                    published++;
+                }
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            page = repository.findAll(page.nextPageable());
+        }
+        kafkaTemplate.flush();
+        return published;
+    }
+
     //method to fetch user Profile
     public UserResponse getUserProfile(String userId) {
         User user = repository.findById(userId)  // if user found then save in user var. else throw error that no user exists 
@@ -75,4 +126,22 @@ public class UserService {
         log.info("Calling User Service for {}", userId);
         return repository.existsByKeycloakId(userId);
     }
+
+    //validates many keycloak ids with a single query, every requested id gets a true/false entry
+    public Map<String, Boolean> existByUserIds(List<String> userIds) {
+        log.info("Validating batch of {} users", userIds.size());
+        if (userIds.size() > maxValidationBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + maxValidationBatchSize + " userIds per batch");
+        }
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+        Set<String> existing = new HashSet<>(repository.findExistingKeycloakIds(new HashSet<>(userIds)));
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            result.put(userId, existing.contains(userId));
+        }
+        return result;
+    }
 }